@@ -12,6 +12,7 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.coolftc.prompt.service.PingServerThread;
+import com.coolftc.prompt.utility.Lanes;
 import java.lang.ref.WeakReference;
 import static com.coolftc.prompt.utility.Constants.*;
 
@@ -71,7 +72,7 @@ public class About extends AppCompatActivity {
         if(holdData != null) holdData.setText(String.format("(%s)", acct.acctIdStr()));
 
         PingServerThread ping = new PingServerThread(getApplicationContext(), new Messenger(mHandler));
-        ping.start();
+        Lanes.submit(Lanes.Lane.NETWORK, ping);
     }
 
     @Override
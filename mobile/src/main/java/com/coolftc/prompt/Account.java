@@ -52,14 +52,12 @@ public class Account implements Serializable {
     public String cleanUnique(){ return isEmail() ? unique : unique.replaceAll("[^0-9]", ""); }
 
     /*
-     *  This method will search a few of the fields to determine if the
-     *  search "term" is contained in it.  It is a helper to aid in the
-     *  determination if the account is of interest. Using toLowerCase
-     *  make it case insensitive.
+     *  The text searched when looking for an account of interest, used by
+     *  the TextFilter.  The fields are separated so a search term does not
+     *  match across the end of one and the start of the next.
      */
-    public boolean Found(String term){
-        String lowterm = term.toLowerCase();
-        return (term.length() == 0 || unique.toLowerCase().contains(lowterm) || display.toLowerCase().contains(lowterm) || contactName.toLowerCase().contains(lowterm));
+    public String SearchKey(){
+        return unique + "\n" + display + "\n" + contactName;
     }
 
     /*
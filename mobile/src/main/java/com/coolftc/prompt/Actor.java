@@ -1,15 +1,13 @@
 package com.coolftc.prompt;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.os.Build;
 
-import com.coolftc.prompt.source.UserRequest;
 import com.coolftc.prompt.source.UserResponse;
+import com.coolftc.prompt.utility.ApiClient;
 import com.coolftc.prompt.utility.Connection;
 import com.coolftc.prompt.utility.ExpClass;
 import com.coolftc.prompt.utility.WebServices;
-import com.google.gson.Gson;
 
 import java.util.Locale;
 import java.util.Random;
@@ -56,38 +54,39 @@ public class Actor extends Account {
     private int someNbr() { return new Random().nextInt(1000000000 - 100000000) + 100000000; }
     /*
      * For the primary user, this method loads the relevant data from the local
-     * store (shared preferences).  Additionally, it can go to the server, although
-     * that should not be used to change local users settings like sleep cycle.
+     * store (shared preferences, cached in memory by the ActorStore).
+     * Additionally, it can go to the server, although that should not be
+     * used to change local users settings like sleep cycle.
      * NOTE: Any use of the network would require the calling party to
      * not be on the main thread when called.
      */
     public void LoadPrime(boolean full, Context context){
 
-        // LoadPrime the local data.
-        SharedPreferences registered = context.getSharedPreferences(SP_REG_STORE, Context.MODE_PRIVATE);
-        acctId = registered.getLong(SP_REG_ID, 0);
-        ticket = registered.getString(SP_REG_TICKET, "");
-        unique = registered.getString(SP_REG_UNIQUE, "");
-        display = registered.getString(SP_REG_DISPLAY, "");
-        token = registered.getString(SP_REG_GCM, "");
-        device = registered.getString(SP_REG_GCM_ID, "");
+        // LoadPrime the local data, kept in memory by the ActorStore.
+        ActorStore.Prime registered = ActorStore.Get(context);
+        acctId = registered.acctId;
+        ticket = registered.ticket;
+        unique = registered.unique;
+        display = registered.display;
+        token = registered.token;
+        device = registered.device;
         timezone = TimeZone.getDefault().getID();
-        sleepcycle = registered.getInt(SP_REG_SCYCLE, 0);
-        contactId = registered.getString(SP_REG_CTID, "");
-        contactName = registered.getString(SP_REG_CTNAME, "");
-        contactPic = registered.getString(SP_REG_CTFACE, "");
-        localId = registered.getString(SP_REG_DBID, "");
-        notesWaiting = registered.getInt(SP_REG_PEND, 0);
-        confirmed = registered.getBoolean(SP_REG_CONFIRM, false);
-        force = registered.getBoolean(SP_REG_FORCE, false);
-        solo = registered.getBoolean(SP_REG_SOLO, false);
+        sleepcycle = registered.sleepcycle;
+        contactId = registered.contactId;
+        contactName = registered.contactName;
+        contactPic = registered.contactPic;
+        localId = registered.localId;
+        notesWaiting = registered.notesWaiting;
+        confirmed = registered.confirmed;
+        force = registered.force;
+        solo = registered.solo;
         isFriend = true;
         primary = true;
 
         if(full) {
             // LoadPrime the server data, too.
             try (Connection net = new Connection(context)) {
-                WebServices ws = new WebServices(new Gson());
+                WebServices ws = ApiClient.getWeb();
                 if (net.isOnline()) {
                     String realPath = ws.baseUrl(context) + FTI_RegisterExtra.replace(SUB_ZZZ, acctIdStr());
                     UserResponse user = ws.callGetApi(realPath, UserResponse.class, ticket);
@@ -110,53 +109,20 @@ public class Actor extends Account {
 
     /*
      * For the primary user, this method saves the relevant data to the
-     * local store (shared preferences).  Additionally, we put it to the
-     * server as well if full=true.
-     * NOTE: Any use of the network would require the calling party to
-     * NOT be on the main thread when called.  This method is synchronized
-     * in case it gets called in multiple places in the code.
+     * local store (shared preferences, by way of the ActorStore).
+     * Additionally, we put it to the server as well if full=true.  That
+     * happens later on the NETWORK lane, see ActorStore.Push, so this is
+     * fine to call from any thread and does not wait on the network.
      */
-    public synchronized void SyncPrime(boolean full, Context context) {
+    public void SyncPrime(boolean full, Context context) {
 
-        // Save the local data.  It is possible for this method to be called
-        SharedPreferences registered = context.getSharedPreferences(SP_REG_STORE, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = registered.edit();
-        editor.putLong(SP_REG_ID, acctId);
-        editor.putString(SP_REG_TICKET, ticket);
-        editor.putString(SP_REG_UNIQUE, cleanUnique());
-        editor.putString(SP_REG_DISPLAY, display);
-        editor.putInt(SP_REG_SCYCLE, sleepcycle);
-        editor.putString(SP_REG_GCM, token);
-        editor.putString(SP_REG_GCM_ID, device);
-        editor.putString(SP_REG_CTID, contactId);
-        editor.putString(SP_REG_CTNAME, contactName);
-        editor.putString(SP_REG_CTFACE, contactPicUri());
-        editor.putString(SP_REG_DBID, localId);
-        editor.putInt(SP_REG_PEND, notesWaiting);
-        editor.putBoolean(SP_REG_CONFIRM, confirmed);
-        editor.putBoolean(SP_REG_FORCE, force);
-        editor.putBoolean(SP_REG_SOLO, solo);
-        editor.apply();
+        // Save the local data.  The ActorStore holds it in memory and writes the changes
+        // to the preference DB a moment later (right away if the user identity changed).
+        ActorStore.Put(context, this);
 
+        // Save data to the server, too.
         if (full && ticket.length() > 0) {
-            // Save data to the server, too.
-            try (Connection net = new Connection(context)) {
-                WebServices ws = new WebServices(new Gson());
-                if (net.isOnline()) {
-                    UserRequest user = new UserRequest(
-                            TimeZone.getDefault().getID(),
-                            display,
-                            sleepcycle,
-                            token,
-                            FTI_TYPE_ANDROID
-                    );
-                    String realPath = ws.baseUrl(context) + FTI_RegisterExtra.replace(SUB_ZZZ, acctIdStr());
-                    ws.callPostApi(realPath, user, UserResponse.class, ticket);
-                } else
-                    ExpClass.Companion.logINFO(KEVIN_SPEAKS, "Account.SyncPrime Network Unavailable");
-            } catch (Exception ex) {
-                ExpClass.Companion.logEX(ex, this.getClass().getName() + ".SyncPrime");
-            }
+            ActorStore.Push(context);
         }
     }
 }
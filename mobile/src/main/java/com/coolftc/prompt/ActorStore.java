@@ -0,0 +1,245 @@
+package com.coolftc.prompt;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.coolftc.prompt.source.UserRequest;
+import com.coolftc.prompt.source.UserResponse;
+import com.coolftc.prompt.utility.ApiClient;
+import com.coolftc.prompt.utility.ExpClass;
+import com.coolftc.prompt.utility.Lanes;
+import com.coolftc.prompt.utility.NetworkMonitor;
+import com.coolftc.prompt.utility.WebServices;
+
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.coolftc.prompt.utility.Constants.*;
+
+/**
+ *  The ActorStore keeps the primary user's local data (see Actor) in memory for the
+    whole process, so it only has to be read from the preference DB once.  The data is
+    held as an immutable Prime snapshot in a volatile field, making a read just a load
+    of that field.  A change replaces the snapshot with a new one (copy-on-write) and
+    bumps the version, so anyone holding the old one still sees a consistent picture,
+    and a screen that caches what it shows can tell when to redraw, see Version().
+
+ *  Writing to the preference DB is delayed by ACTOR_PERSIST_DELAY, so a burst of changes
+    turns into a single write, and only the keys that changed are written.  A change to
+    who the user is (id, ticket or unique name) or to the FCM token and device is
+    written right away, since losing that to a process kill would leave the app signed
+    in to nobody, or the server sending notifications to an old token.  The services
+    that change the token (e.g. NotificationX) are often stopped right after.
+    This is the only place the SP_REG_STORE data should be read or written.
+
+ *  Sending the data to the server is a job on the NETWORK lane, see Push().  Only one
+    push is queued at a time, and it sends whatever the data is when it runs, so a
+    number of pushes close together end up as one call with the latest data.  Pushes
+    run one at a time, so an older one can never land after a newer one.
+ */
+public class ActorStore {
+
+    private static volatile Prime sCurrent;
+    private static Prime sPersisted;    // What is in the preference DB, guarded by the class lock.
+    private static Context sContext;
+    private static volatile long sVersion = 0;
+    private static final Handler sTimer = new Handler(Looper.getMainLooper());
+    private static final AtomicBoolean sPushQueued = new AtomicBoolean(false);
+    private static final Object sPushLock = new Object();
+
+    private ActorStore() {}
+
+    /*
+     *  The immutable copy of the stored data.  The values are as saved, e.g. the
+     *  unique name has been cleaned up.
+     */
+    public static final class Prime {
+        public final long acctId;
+        public final String ticket;
+        public final String unique;
+        public final String display;
+        public final int sleepcycle;
+        public final String token;
+        public final String device;
+        public final String contactId;
+        public final String contactName;
+        public final String contactPic;
+        public final String localId;
+        public final int notesWaiting;
+        public final boolean confirmed;
+        public final boolean force;
+        public final boolean solo;
+
+        Prime(Actor from) {
+            acctId = from.acctId;
+            ticket = from.ticket;
+            unique = from.cleanUnique();
+            display = from.display;
+            sleepcycle = from.sleepcycle;
+            token = from.token;
+            device = from.device;
+            contactId = from.contactId;
+            contactName = from.contactName;
+            contactPic = from.contactPicUri();
+            localId = from.localId;
+            notesWaiting = from.notesWaiting;
+            confirmed = from.confirmed;
+            force = from.force;
+            solo = from.solo;
+        }
+
+        Prime(SharedPreferences registered) {
+            acctId = registered.getLong(SP_REG_ID, 0);
+            ticket = registered.getString(SP_REG_TICKET, "");
+            unique = registered.getString(SP_REG_UNIQUE, "");
+            display = registered.getString(SP_REG_DISPLAY, "");
+            sleepcycle = registered.getInt(SP_REG_SCYCLE, 0);
+            token = registered.getString(SP_REG_GCM, "");
+            device = registered.getString(SP_REG_GCM_ID, "");
+            contactId = registered.getString(SP_REG_CTID, "");
+            contactName = registered.getString(SP_REG_CTNAME, "");
+            contactPic = registered.getString(SP_REG_CTFACE, "");
+            localId = registered.getString(SP_REG_DBID, "");
+            notesWaiting = registered.getInt(SP_REG_PEND, 0);
+            confirmed = registered.getBoolean(SP_REG_CONFIRM, false);
+            force = registered.getBoolean(SP_REG_FORCE, false);
+            solo = registered.getBoolean(SP_REG_SOLO, false);
+        }
+
+        boolean sameIdentity(Prime other) {
+            return other != null && acctId == other.acctId
+                    && Objects.equals(ticket, other.ticket) && Objects.equals(unique, other.unique);
+        }
+
+        boolean sameDevice(Prime other) {
+            return other != null && Objects.equals(token, other.token) && Objects.equals(device, other.device);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Prime)) return false;
+            Prime other = (Prime) o;
+            return sameIdentity(other) && sameDevice(other) && sleepcycle == other.sleepcycle && notesWaiting == other.notesWaiting
+                    && confirmed == other.confirmed && force == other.force && solo == other.solo
+                    && Objects.equals(display, other.display) && Objects.equals(contactId, other.contactId)
+                    && Objects.equals(contactName, other.contactName) && Objects.equals(contactPic, other.contactPic)
+                    && Objects.equals(localId, other.localId);
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(acctId, ticket, unique); }
+    }
+
+    /*
+     *  The current data.  The first call reads it from the preference DB.
+     */
+    public static Prime Get(Context context) {
+        Prime current = sCurrent;
+        if (current != null) return current;
+        synchronized (ActorStore.class) {
+            if (sCurrent == null) {
+                sContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+                sPersisted = new Prime(sContext.getSharedPreferences(SP_REG_STORE, Context.MODE_PRIVATE));
+                sCurrent = sPersisted;
+            }
+            return sCurrent;
+        }
+    }
+
+    // Goes up by one each time the data changes.
+    public static long Version() { return sVersion; }
+
+    /*
+     *  Replace the data with what is in the Actor.  Returns false if nothing changed,
+     *  in which case nothing else happens.
+     */
+    public static synchronized boolean Put(Context context, Actor from) {
+        Prime current = Get(context);
+        Prime next = new Prime(from);
+        if (next.equals(current)) return false;
+        sCurrent = next;
+        ++sVersion;
+        sTimer.removeCallbacks(PERSIST);
+        if (next.sameIdentity(sPersisted) && next.sameDevice(sPersisted)) {
+            sTimer.postDelayed(PERSIST, ACTOR_PERSIST_DELAY);
+        } else {
+            Flush();
+        }
+        return true;
+    }
+
+    /*
+     *  Write any changes to the preference DB now.  Only the keys that are different
+     *  from the last write are sent.
+     */
+    public static synchronized void Flush() {
+        sTimer.removeCallbacks(PERSIST);
+        Prime next = sCurrent;
+        Prime last = sPersisted;
+        if (next == null || next == last) return;
+
+        SharedPreferences.Editor editor = sContext.getSharedPreferences(SP_REG_STORE, Context.MODE_PRIVATE).edit();
+        if (next.acctId != last.acctId) editor.putLong(SP_REG_ID, next.acctId);
+        if (!Objects.equals(next.ticket, last.ticket)) editor.putString(SP_REG_TICKET, next.ticket);
+        if (!Objects.equals(next.unique, last.unique)) editor.putString(SP_REG_UNIQUE, next.unique);
+        if (!Objects.equals(next.display, last.display)) editor.putString(SP_REG_DISPLAY, next.display);
+        if (next.sleepcycle != last.sleepcycle) editor.putInt(SP_REG_SCYCLE, next.sleepcycle);
+        if (!Objects.equals(next.token, last.token)) editor.putString(SP_REG_GCM, next.token);
+        if (!Objects.equals(next.device, last.device)) editor.putString(SP_REG_GCM_ID, next.device);
+        if (!Objects.equals(next.contactId, last.contactId)) editor.putString(SP_REG_CTID, next.contactId);
+        if (!Objects.equals(next.contactName, last.contactName)) editor.putString(SP_REG_CTNAME, next.contactName);
+        if (!Objects.equals(next.contactPic, last.contactPic)) editor.putString(SP_REG_CTFACE, next.contactPic);
+        if (!Objects.equals(next.localId, last.localId)) editor.putString(SP_REG_DBID, next.localId);
+        if (next.notesWaiting != last.notesWaiting) editor.putInt(SP_REG_PEND, next.notesWaiting);
+        if (next.confirmed != last.confirmed) editor.putBoolean(SP_REG_CONFIRM, next.confirmed);
+        if (next.force != last.force) editor.putBoolean(SP_REG_FORCE, next.force);
+        if (next.solo != last.solo) editor.putBoolean(SP_REG_SOLO, next.solo);
+        editor.apply();
+        sPersisted = next;
+    }
+
+    /*
+     *  Send the user data (the parts the server keeps) to the server, soon.  Nothing
+     *  is queued if a push is already waiting, as that one will send the latest data.
+     */
+    public static void Push(Context context) {
+        Get(context);
+        if (!sPushQueued.compareAndSet(false, true)) return;
+        if (Lanes.submit(Lanes.Lane.NETWORK, ActorStore::PushNow) == null) {
+            sPushQueued.set(false);
+        }
+    }
+
+    private static void PushNow() {
+        synchronized (sPushLock) {
+            // Anything changed after this point gets its own push.
+            sPushQueued.set(false);
+            Prime prime = sCurrent;
+            if (prime == null || prime.ticket.length() == 0) return;
+            if (!NetworkMonitor.INSTANCE.getOnline()) {
+                ExpClass.Companion.logINFO(KEVIN_SPEAKS, "ActorStore.Push Network Unavailable");
+                return;
+            }
+            try {
+                WebServices ws = ApiClient.getWeb();
+                UserRequest user = new UserRequest(
+                        TimeZone.getDefault().getID(),
+                        prime.display,
+                        prime.sleepcycle,
+                        prime.token,
+                        FTI_TYPE_ANDROID
+                );
+                String realPath = ws.baseUrl(sContext) + FTI_RegisterExtra.replace(SUB_ZZZ, Long.toString(prime.acctId));
+                ws.callPostApi(realPath, user, UserResponse.class, prime.ticket);
+            } catch (Exception ex) {
+                ExpClass.Companion.logEX(ex, ActorStore.class.getName() + ".PushNow");
+            }
+        }
+    }
+
+    private static final Runnable PERSIST = ActorStore::Flush;
+}
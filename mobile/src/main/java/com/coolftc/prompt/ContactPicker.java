@@ -11,7 +11,6 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Handler;
-import android.provider.ContactsContract;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -34,16 +33,18 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import com.coolftc.prompt.service.SendInviteThread;
+import com.coolftc.prompt.source.ContactsCache;
 import com.coolftc.prompt.source.FriendDB;
 import com.coolftc.prompt.utility.Connection;
 import com.coolftc.prompt.utility.ExpClass;
-import com.google.i18n.phonenumbers.PhoneNumberUtil;
-import com.google.i18n.phonenumbers.Phonenumber;
+import com.coolftc.prompt.utility.Lanes;
+import com.coolftc.prompt.utility.TextFilter;
 import com.mikhaellopez.circularimageview.CircularImageView;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -56,6 +57,9 @@ import java.util.TreeMap;
  * is available to invite to the network.
  *
  * The first person on the list is the primary user.
+ *
+ * To send the same prompt to a group, long press each connection to add (or remove) it,
+ * then pick Send to Group from the menu.  The Entry screen then sends to all of them.
  */
 public class ContactPicker extends AppCompatActivity implements FragmentTalkBack {
 
@@ -67,10 +71,17 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
     private int contactPermissionCheck;
     // The "mAccounts" collect all the possible people to display.
     private List<Account> mAccounts = new ArrayList< >();
+    // The "mFilter" narrows the mAccounts as the search is typed.
+    private TextFilter<Account> mFilter = new TextFilter<>(mAccounts, Account::SearchKey);
+    // The connections picked for a group send, by unique name, in the order picked.
+    private final Map<String, Account> mGroup = new LinkedHashMap<>();
     // This is the mapping of the detail map to each specific person.
     private String[] StatusMapFROM = {CP_PER_ID, CP_TYPE, CP_NAME, CP_EXTRA, CP_UNIQUE, CP_LINKED, CP_FACE, CP_BUTTON};
     private int[] StatusMapTO = {R.id.rowp_Id, R.id.rowpType, R.id.rowpContactName, R.id.rowpContactExtra, R.id.rowpUnique, R.id.rowpUninvite, R.id.rowpFacePic};
 
+    // The ActorStore version the primary user row was read at.
+    private long mActorVersion;
+
     // Handler used as a timer to trigger updates.
     private Handler hRefresh = new Handler();
     private Integer hRefreshCntr = 0;
@@ -107,6 +118,13 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
     protected void onResume() {
         super.onResume();
         hRefreshCntr = 0;
+        ContactsCache.addListener(mContactsChanged);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        ContactsCache.removeListener(mContactsChanged);
     }
 
     /*
@@ -122,6 +140,7 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
 
         // First Step is to grab the primary user, which is stored in the preferences.
         AddDelimitRow(R.string.contact_pri);
+        mActorVersion = ActorStore.Version();
         mAccounts.add(new Actor(this));
 
         // Second Step is to get all friends and invites, stored locally (with periodic updates).
@@ -142,13 +161,15 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
         }
 
         // Once the mAccounts are populated, go ahead and use the cache processor.
+        mFilter = new TextFilter<>(mAccounts, Account::SearchKey);
         ShowDetailsCache(search);
     }
 
     /*
      *  This is an optimization on the ShowDetails(), in that it just uses the existing
      *  list of mAccounts.  This make the type ahead search much quicker, but will not
-     *  pick up any changes to the list.
+     *  pick up any changes to the list.  The filter only rescans the last
+     *  matches when more is typed onto the search.
      */
     private void ShowDetailsCache(String search) {
         // The "uniques" hold all the unique names that are on the list
@@ -158,10 +179,9 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
         List<Map<String, String>> details = new ArrayList<>();
 
         // Move the account data into the desired detail format.
-        for(Account acct : mAccounts) {
+        for(Account acct : mFilter.Filter(search)) {
             // Sometimes we want to skip displaying records.
             if (uniques.containsKey(acct.bestName())) continue;
-            if (!acct.Found(search)) continue;
 
             Map<String, String> hold = new TreeMap<>();
 
@@ -180,6 +200,7 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
             hold.put(CP_LINKED, (acct.confirmed || acct.isFriend) && !acct.primary ? acct.unique : "");
             hold.put(CP_BUTTON,  !acct.confirmed ? (acct.pending ? getString(R.string.accept) : getString(R.string.waiting)) : "");
             hold.put(CP_FACE, acct.contactPicUri());
+            hold.put(CP_PICKED, mGroup.containsKey(acct.unique) ? acct.unique : "");
             details.add(hold);
         }
 
@@ -277,27 +298,7 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
         try {
             switch (view.getId()) {
                 case R.id.rowpItem:
-                    // Get the important data out of the row.
-                    TextView holdView;
-                    holdView = (TextView) view.findViewById(R.id.rowpUnique);
-                    if(holdView==null) break;
-                    String uSelect = holdView.getText().toString();
-                    holdView = (TextView) view.findViewById(R.id.rowpContactName);
-                    String cSelect = "";
-                    if(holdView!=null) cSelect = holdView.getText().toString();
-
-                    // Find the matching Account.
-                    Account holdAcct = null;
-                    for(Account acct : mAccounts) {
-                        if (acct.unique.equalsIgnoreCase(uSelect)) {
-                            if(acct.contactName.equalsIgnoreCase(cSelect) || cSelect.length() == 0) {
-                                holdAcct = acct;    // exact match in case two contacts share a uname
-                                break;
-                            } else {
-                                holdAcct = acct;    // not an exact match, but good enough if nothing else
-                            }
-                        }
-                    }
+                    Account holdAcct = FindAccount(view);
                     if(holdAcct == null) break;
 
                     // Navigate to message entry
@@ -351,6 +352,50 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
         }
     }
 
+    /*
+     *  A long press on a connection adds it to (or takes it out of) the group to send
+     *  a prompt to.  Anyone else cannot get a prompt yet, so is left alone.
+     */
+    private final View.OnLongClickListener mGroupPick = new View.OnLongClickListener() {
+        @Override
+        public boolean onLongClick(View view) {
+            Account holdAcct = FindAccount(view);
+            if(holdAcct == null || !holdAcct.confirmed) return false;
+            if(mGroup.remove(holdAcct.unique) == null) mGroup.put(holdAcct.unique, holdAcct);
+            invalidateOptionsMenu();
+            ShowDetailsCache(mContactSearch.getText().toString());
+            return true;
+        }
+    };
+
+    /*
+     *  Get the Account shown on a row, or null if there is not one.
+     */
+    private Account FindAccount(View row) {
+        // Get the important data out of the row.
+        TextView holdView;
+        holdView = (TextView) row.findViewById(R.id.rowpUnique);
+        if(holdView==null) return null;
+        String uSelect = holdView.getText().toString();
+        holdView = (TextView) row.findViewById(R.id.rowpContactName);
+        String cSelect = "";
+        if(holdView!=null) cSelect = holdView.getText().toString();
+
+        // Find the matching Account.
+        Account holdAcct = null;
+        for(Account acct : mAccounts) {
+            if (acct.unique.equalsIgnoreCase(uSelect)) {
+                if(acct.contactName.equalsIgnoreCase(cSelect) || cSelect.length() == 0) {
+                    holdAcct = acct;    // exact match in case two contacts share a uname
+                    break;
+                } else {
+                    holdAcct = acct;    // not an exact match, but good enough if nothing else
+                }
+            }
+        }
+        return holdAcct;
+    }
+
     /*
      *  Find all the associated email addresses and phone numbers for a contact.
      */
@@ -381,7 +426,7 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
      * This reads all the local friends/invites into an account list.
      */
     private void LoadFriends(Integer friendType){
-        FriendDB social = new FriendDB(this);  // Be sure to close this before leaving the thread.
+        FriendDB social = FriendDB.getInstance(this);
         List<Account> contacts = new ArrayList< >();
         String sortEnd = getString(R.string.zzzzz); // Used to sort numbers to end
         SQLiteDatabase db = social.getReadableDatabase();
@@ -418,68 +463,23 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
 
             cursor.close();
         } catch(Exception ex){ cursor.close(); ExpClass.Companion.logEX(ex, this.getClass().getName() + ".LoadFriends"); }
-        finally { social.close(); }
     }
 
     /*
-     * This reads all the contacts with a phone number or email address from the data table.  For a good layout of the data see:
-     * http://androidexample.com/Get_Contact_Emails_By_Content_Provider_-_Android_Example/index.php?view=article_discription&aid=121
-     * The phone numbers get a little formatting help.  With all the data we want in memory, specific data is selectively displayed.
+     * The device contacts (phone numbers and email addresses) are kept in memory by the
+     * ContactsCache, which reads them in the background and again when they change.  If
+     * they are not read yet, the list is filled in when the cache calls back.
      */
     private void LoadContacts(){
-        List<Account> contacts = new ArrayList< >();
-        String sortEnd = getString(R.string.zzzzz);
-        String customType = getString(R.string.other);
-        Cursor contact = null;
-        String[] selection = {ContactsContract.Data.CONTACT_ID, ContactsContract.Data.DISPLAY_NAME_PRIMARY, ContactsContract.Contacts.Data.DATA1, ContactsContract.Data.MIMETYPE, ContactsContract.Contacts.PHOTO_THUMBNAIL_URI, ContactsContract.CommonDataKinds.Phone.TYPE};
-        try{
-            contact = getContentResolver().query(
-                    ContactsContract.Data.CONTENT_URI,
-                    selection,
-                    ContactsContract.Contacts.Data.MIMETYPE + "=? OR " + ContactsContract.Contacts.Data.MIMETYPE + "=?",
-                    new String[]{ContactsContract.CommonDataKinds.Email.CONTENT_ITEM_TYPE, ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE},
-                    ContactsContract.Data.DISPLAY_NAME_PRIMARY);
-
-            if(contact == null || contact.getCount() == 0) return;
-            PhoneNumberUtil phoneHelper = PhoneNumberUtil.getInstance();
-            while (contact.moveToNext()) {
-                try {
-                    Account holdAcct = new Account();
-                    Long id = contact.getLong(contact.getColumnIndex(ContactsContract.Data.CONTACT_ID));
-                    holdAcct.contactId = id.toString();
-                    holdAcct.contactName = contact.getString(contact.getColumnIndex(ContactsContract.Data.DISPLAY_NAME_PRIMARY));
-                    holdAcct.contactSur = holdAcct.contactName.substring(holdAcct.contactName.lastIndexOf(" ")+1);
-                    if (holdAcct.contactSur.length() > 0 && Character.isDigit(holdAcct.contactSur.charAt(0))) holdAcct.contactSur = sortEnd; // sort these to the end
-                    String mimetype = contact.getString(contact.getColumnIndex(ContactsContract.Data.MIMETYPE));
-                    holdAcct.unique = contact.getString(contact.getColumnIndex(ContactsContract.Contacts.Data.DATA1));
-                    if (mimetype.equalsIgnoreCase(ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE)) {
-                        Phonenumber.PhoneNumber fullNbr = phoneHelper.parse(holdAcct.unique, "US");
-                        String holdnbr = phoneHelper.format(fullNbr, PhoneNumberUtil.PhoneNumberFormat.E164);
-                        holdAcct.unique = holdnbr.replace("+", "");
-                        holdAcct.contactLabel = ContactsContract.CommonDataKinds.Phone.getTypeLabel(getResources(), Integer.parseInt(contact.getString(contact.getColumnIndex(ContactsContract.CommonDataKinds.Phone.TYPE))), customType).toString();
-                    }
-                    holdAcct.contactPic = contact.getString(contact.getColumnIndex(ContactsContract.Contacts.PHOTO_THUMBNAIL_URI));
-                    contacts.add(holdAcct);
-                } catch (Exception ex) {
-                    /* If a single contact has an issue, just move past it. Specifically, the phone
-                       number parser might barf if the user has some non-number in that field. We do
-                       not want to use it either in that case. */
-                }
-            }
-            contact.close();
-            // The contacts are sorted by first name already, so only sort if need to switch to last name sorting.
-            if(Settings.isSortByLastName(getApplicationContext())){
-                Collections.sort(contacts, Account.ByLastFirstName);
-            }
-            for (Account ali : contacts) {
-                mAccounts.add(ali);
-            }
-        }catch (Exception ex) {
-            ExpClass.Companion.logEX(ex, this.getClass().getName() + ".GetContactList");
-            if(contact != null) contact.close();
-        }
+        mAccounts.addAll(ContactsCache.Get(getApplicationContext(), Settings.isSortByLastName(getApplicationContext())));
     }
 
+    // Redraw once the ContactsCache has new contacts.
+    private final ContactsCache.Listener mContactsChanged = () -> {
+        if (contactPermissionCheck == PackageManager.PERMISSION_GRANTED) {
+            ShowDetails(mContactSearch.getText().toString(), true);
+        }
+    };
 
     /* The Options Menu works closely with the ActionBar.  It can show useful menu items on the bar
      * while hiding less used ones on the traditional menu.  The xml configuration determines how they
@@ -492,6 +492,12 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
         return true;
     }
     @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem group = menu.findItem(R.id.mnuGroupSend);
+        if (group != null) group.setVisible(!mGroup.isEmpty());
+        return super.onPrepareOptionsMenu(menu);
+    }
+    @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
             case R.id.mnuSort:
@@ -504,6 +510,17 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
                 ContactPickerSortDialog sorter = new ContactPickerSortDialog();
                 sorter.show(mgr, KY_CNTC_FRAG);
                 return true;
+            case R.id.mnuGroupSend:
+                // Everyone picked gets the same prompt, see Entry.
+                Intent intent = new Intent(this, Entry.class);
+                Bundle mBundle = new Bundle();
+                mBundle.putSerializable(IN_USER_ACCTS, new ArrayList<>(mGroup.values()));
+                intent.putExtras(mBundle);
+                startActivity(intent);
+                mGroup.clear();
+                invalidateOptionsMenu();
+                ShowDetailsCache(mContactSearch.getText().toString());
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -534,7 +551,9 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
     @Override
     public void newInvite(String [] addresses, String display, boolean mirror) {
         SendInviteThread smt = new SendInviteThread(getApplicationContext(), addresses, display, mirror);
-        smt.start();
+        if (Lanes.submit(Lanes.Lane.NETWORK, smt) == null) {
+            Toast.makeText(this, R.string.msgBusy, Toast.LENGTH_LONG).show();
+        }
     }
 
     /*
@@ -608,6 +627,8 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
                     if(holdView!=null) holdView.setText(holdData.get(CP_PER_ID));
                     switch (type) {
                         case TYPE_ITEM:
+                            convertView.setOnLongClickListener(mGroupPick);
+                            convertView.setBackgroundResource(holdData.get(CP_PICKED).length() > 0 ? R.color.promptbluesp : 0);
                             holdView = (TextView) convertView.findViewById(R.id.rowpType);
                             if(holdView!=null) holdView.setText(holdData.get(CP_TYPE));
                             holdView = (TextView) convertView.findViewById(R.id.rowpContactName);
@@ -648,7 +669,7 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
     // the DB with the latest contacts, typically after the their status might change.
     // For the first minute we want to use the faster refresh rate of TQ and do a full reload of the
     // screen.  This should cover the time a person would actually be looking at the screen,
-    // then back off and don't reload the messages to save battery.
+    // then back off and don't reload the messages to save battery, unless the primary user changed.
     private Runnable rRefresh = new Runnable() {
         public void run() {
 
@@ -658,7 +679,11 @@ public class ContactPicker extends AppCompatActivity implements FragmentTalkBack
                 ShowDetails(holdSearch, true);
                 hRefresh.postDelayed(this, UPD_SCREEN_TQ);
             } else {
-                ShowDetailsCache(holdSearch);
+                if (ActorStore.Version() != mActorVersion) {
+                    ShowDetails(holdSearch, true);
+                } else {
+                    ShowDetailsCache(holdSearch);
+                }
                 hRefresh.postDelayed(this, UPD_SCREEN_TM);
             }
         }
@@ -19,9 +19,9 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.coolftc.prompt.service.CancelMessageThread;
 import com.coolftc.prompt.source.FriendDB;
 import com.coolftc.prompt.source.MessageDB;
-import com.coolftc.prompt.utility.Connection;
 import com.coolftc.prompt.utility.ExpClass;
 import com.coolftc.prompt.utility.KTime;
+import com.coolftc.prompt.utility.Lanes;
 
 import java.util.Arrays;
 
@@ -84,18 +84,10 @@ public class Detail extends AppCompatActivity {
     /*
      *  This deletes the Prompt from the local data store, and if it has not
      *  yet been processed or is a recurring prompt, it also removes it from
-     *  the server pending queue.
+     *  the server pending queue.  If the network is down, the Outbox waits for it.
      */
     public void CancelPrompt(final View view){
 
-        // If we use the web serivce, we need the network.
-        try (Connection net = new Connection(getApplicationContext())) {
-            if (!net.isOnline() && (!mPrompt.IsPast() || mPrompt.IsRecurring())) {
-                Toast.makeText(this, R.string.msgNoNet, Toast.LENGTH_LONG).show();
-                return;
-            }
-        } catch (Exception ex) { /* Just exit */ return; }
-
         // Delete nag dialog.  To launch another activity inside a listener, we save off the main activity.
         final Activity holdAct = this;
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
@@ -109,8 +101,12 @@ public class Detail extends AppCompatActivity {
                 .setPositiveButton(R.string.ok, new DialogInterface.OnClickListener() {
                     public void onClick(DialogInterface dialog, int id) {
                         // Push possible network (and database) actions off the main thread.
+                        // If the lane is full, stay here so the delete can be tried again.
                         CancelMessageThread cmt = new CancelMessageThread(getApplicationContext(), mPrompt);
-                        cmt.start();
+                        if (Lanes.submit(Lanes.Lane.DB, cmt) == null) {
+                            Toast.makeText(holdAct, R.string.msgBusy, Toast.LENGTH_LONG).show();
+                            return;
+                        }
 
                         // Return to the History, it will reflect the deleted data after a short interval.
                         Intent intent = new Intent(holdAct, History.class);
@@ -164,7 +160,7 @@ public class Detail extends AppCompatActivity {
     private void BuildPrompt() {
 
         try {
-            mMessage = new MessageDB(getApplicationContext());  // Be sure to close this before leaving the thread.
+            mMessage = MessageDB.getInstance(getApplicationContext());
 
             // Check if we have a local DB id to look up the record.
             if (mPrompt.id > 0) {
@@ -189,8 +185,6 @@ public class Detail extends AppCompatActivity {
 
         } catch (Exception ex) {
             ExpClass.Companion.logEX(ex, this.getClass().getName() + ".BuildPrompt");
-        } finally {
-            mMessage.close();
         }
     }
 
@@ -373,6 +367,8 @@ public class Detail extends AppCompatActivity {
         values.put(MessageDB.MESSAGE_SNOOZE_ID, 0);
         values.put(MessageDB.MESSAGE_CREATE, KTime.ParseNow(KTime.KT_fmtDate3339fk, KTime.UTC_TIMEZONE).toString());
         values.put(MessageDB.MESSAGE_PROCESSED, MessageDB.SQLITE_TRUE);
+        values.put(MessageDB.MESSAGE_TIME_MS, MessageDB.EpochOf(msg.targetTime));
+        values.put(MessageDB.MESSAGE_CREATE_MS, System.currentTimeMillis());
 
         return db.insert(MessageDB.MESSAGE_TABLE, null, values);  // Returns -1 if there is an error.
     }
@@ -382,7 +378,7 @@ public class Detail extends AppCompatActivity {
      *  unique and display names for the mAccounts, so this is used to suppliment it.
      */
     private Account GetAccountByName(String uname){
-        FriendDB social = new FriendDB(getApplicationContext());  // Be sure to close this before leaving the thread.
+        FriendDB social = FriendDB.getInstance(getApplicationContext());
         SQLiteDatabase db = social.getReadableDatabase();
         String[] filler = {};
         Cursor cursor = db.rawQuery(DB_FriendByName.replace(SUB_ZZZ, uname), filler);
@@ -406,6 +402,5 @@ public class Detail extends AppCompatActivity {
             cursor.close();
             return local;
         } catch(Exception ex){ cursor.close(); ExpClass.Companion.logEX(ex, this.getClass().getName() + ".GetAccountByName"); return new Account(); }
-        finally { social.close(); }
     }
 }
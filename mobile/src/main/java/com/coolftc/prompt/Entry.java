@@ -17,11 +17,13 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.coolftc.prompt.service.SendMessageThread;
-import com.coolftc.prompt.utility.Connection;
 import com.coolftc.prompt.utility.ExpParseToCalendar;
 import com.coolftc.prompt.utility.KTime;
+import com.coolftc.prompt.utility.Lanes;
 import com.google.firebase.analytics.FirebaseAnalytics;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
@@ -37,7 +39,8 @@ import java.util.Objects;
  *
  *  This screen requires no data* or network access. It gets the "who"
  *  from welcome (if primary) or the contact picker, and sends the
- *  message by starting a thread.  After starting the thread, the
+ *  message by starting a thread.  The contact picker can also pass in
+ *  a group, in which case everyone in it gets the same message.  After starting the thread, the
  *  history screen is shown, where the status of a message can be
  *  shown (e.g. sending, etc.).
  *  The thread handles writing to the DB and calling the web service.
@@ -47,6 +50,7 @@ public class Entry extends AppCompatActivity {
 
     // Data needed to create a message
     private Account mTarget;                     // Who is getting this message
+    private ArrayList<Account> mTargets;         // Everyone getting it, the first is mTarget
     private Reminder mPrompt;                    // Working copy of the message
     private Spinner mTimename;                   // Simple time - name
     private List<String> mTimeadjData;           // Holds the raw data for mTimeadj
@@ -68,11 +72,15 @@ public class Entry extends AppCompatActivity {
         // When saved data is also passed in normally, it needs to be restored here.
         if (savedInstanceState != null) {
             mTarget = (Account) savedInstanceState.getSerializable(IN_USER_ACCT);
+            mTargets = Targets(savedInstanceState.getSerializable(IN_USER_ACCTS));
             mPrompt = (Reminder) savedInstanceState.getSerializable(IN_MESSAGE);
         }else {
             firstRun = true;
             if (extras != null) {
                 mTarget = (Account) extras.getSerializable(IN_USER_ACCT);
+                // A group send (see ContactPicker) passes in everyone.
+                mTargets = Targets(extras.getSerializable(IN_USER_ACCTS));
+                if(mTargets != null) mTarget = mTargets.get(0);
                 if(mTarget == null) {
                     mTarget = new Actor(this);  // Default to self-message.
                 }
@@ -95,6 +103,11 @@ public class Entry extends AppCompatActivity {
             }
         }
 
+        if(mTargets == null) {
+            mTargets = new ArrayList<>();
+            mTargets.add(mTarget);
+        }
+
         // Set up main view and menu.
         setContentView(R.layout.entry);
         if (getSupportActionBar() != null) getSupportActionBar().setDisplayHomeAsUpEnabled(true);
@@ -154,6 +167,7 @@ public class Entry extends AppCompatActivity {
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         outState.putSerializable(IN_USER_ACCT, mTarget);
+        outState.putSerializable(IN_USER_ACCTS, mTargets);
         outState.putSerializable(IN_MESSAGE, mPrompt);
         super.onSaveInstanceState(outState);
     }
@@ -167,6 +181,13 @@ public class Entry extends AppCompatActivity {
         super.onRestoreInstanceState(savedInstanceState);
     }
 
+    // The group passed in, or null if there is not one.
+    @SuppressWarnings("unchecked")
+    private ArrayList<Account> Targets(Serializable passed) {
+        if(!(passed instanceof ArrayList) || ((ArrayList<Account>) passed).isEmpty()) return null;
+        return (ArrayList<Account>) passed;
+    }
+
     /*
      *  Population of the screen.
      */
@@ -183,7 +204,13 @@ public class Entry extends AppCompatActivity {
         holdText = findViewById(R.id.sendContactName);
         if(holdText != null) { holdText.setText(mTarget.bestName());}
         holdText = findViewById(R.id.sendContactExtra);
-        if(holdText != null) { holdText.setText(!mTarget.primary ? mTarget.bestNameAlt() : "");}
+        if(holdText != null) {
+            if(mTargets.size() > 1) {
+                holdText.setText(getString(R.string.ent_group_more, mTargets.size() - 1));
+            } else {
+                holdText.setText(!mTarget.primary ? mTarget.bestNameAlt() : "");
+            }
+        }
 
         // When are they getting the message (can change).
         String holdRaw = getResources().getString(R.string.deliver) + " ";
@@ -335,56 +362,60 @@ public class Entry extends AppCompatActivity {
     /*
      *  Create the notification by:
      *  1: Collecting the desired information from the GUI.
-     *  2: Checking the network is available.
-     *  3: Starting a thread to:
-     *      a. Save data to table with status = sending.
-     *      b. Send data to web service.
+     *  2: Starting a thread to:
+     *      a. Save data to table with status = sending, one row per person
+     *         getting it, all in one go for a group.
+     *      b. Queue the data for the web service, it is sent when the network allows.
      *      c. Update status on table to sent or failed, along with key and specific time.
-     *  4: Reset UI for next message.
-     *  5: Launch the history Activity (to see messages & status)
+     *  3: Reset UI for next message.
+     *  4: Launch the history Activity (to see messages & status)
      */
     public void SendMessage(View view) {
         TextView holdText;
-
-        Reminder ali = new Reminder();
-
-        try (Connection net = new Connection(getApplicationContext())) {
-            if (!net.isOnline()) {
-                Toast.makeText(this, R.string.msgNoNet, Toast.LENGTH_LONG).show();
-                return;
-            }
-        } catch (Exception ex) { /* Just exit */ return; }
-
-        ali.target = mTarget;
-        ali.from = new Actor(this);
+        Actor from = new Actor(this);
+        String message = "";
         holdText = findViewById(R.id.sendMessage);
-        if(holdText!=null) { ali.message = holdText.getText().toString(); }
-        if(ali.message.length()==0) { ali.message = getResources().getString(R.string.ent_DefaulMsg); }
-        if(ali.message.length() > MSG_MAX_LENGTH) { ali.message = ali.message.substring(0, MSG_MAX_LENGTH); }
-        ali.targetTime = mPrompt.targetTime;
-        // Listbox index is one less that the value we need for the time name.
+        if(holdText!=null) { message = holdText.getText().toString(); }
+        if(message.length()==0) { message = getResources().getString(R.string.ent_DefaulMsg); }
+        if(message.length() > MSG_MAX_LENGTH) { message = message.substring(0, MSG_MAX_LENGTH); }
         CheckBox holdChkBox = findViewById(R.id.sendExactTime);
-        if(holdChkBox != null && holdChkBox.isChecked()) { // Exact time.
-            ali.targetTimeNameId = 0;
-        } else {
-            ali.SetTargetTimeNameIdDsply(mTimename.getSelectedItemPosition());
+        boolean exact = holdChkBox != null && holdChkBox.isChecked();
+
+        List<Reminder> prompts = new ArrayList<>();
+        for (Account target : mTargets) {
+            Reminder ali = new Reminder();
+            ali.target = target;
+            ali.from = from;
+            ali.message = message;
+            ali.targetTime = mPrompt.targetTime;
+            // Listbox index is one less that the value we need for the time name.
+            if(exact) {
+                ali.targetTimeNameId = 0;
+            } else {
+                ali.SetTargetTimeNameIdDsply(mTimename.getSelectedItemPosition());
+            }
+            // Want a number from 0 to 5, so do an integer division to truncate fraction.
+            ali.SetTargetTimeAdjIdDsply(mTimeadj.getProgress() / SEEK_MARK);
+            ali.recurUnit = mPrompt.recurUnit;
+            ali.recurPeriod = mPrompt.recurPeriod;
+            ali.recurNumber = mPrompt.recurNumber;
+            ali.recurEnd = mPrompt.recurEnd;
+            prompts.add(ali);
         }
-        // Want a number from 0 to 5, so do an integer division to truncate fraction.
-        ali.SetTargetTimeAdjIdDsply(mTimeadj.getProgress() / SEEK_MARK);
-        ali.recurUnit = mPrompt.recurUnit;
-        ali.recurPeriod = mPrompt.recurPeriod;
-        ali.recurNumber = mPrompt.recurNumber;
-        ali.recurEnd = mPrompt.recurEnd;
 
-        SendMessageThread smt = new SendMessageThread(getApplicationContext(), ali);
-        smt.start();
+        // If the lane is full, stay here so the prompt is not lost and can be sent again.
+        SendMessageThread smt = new SendMessageThread(getApplicationContext(), prompts);
+        if (Lanes.submit(Lanes.Lane.DB, smt) == null) {
+            Toast.makeText(this, R.string.msgBusy, Toast.LENGTH_LONG).show();
+            return;
+        }
 
         Intent intent = new Intent(this, History.class);
         startActivity(intent);
 
         // Let Analytics know we tried to send a prompt.
         Bundle params = new Bundle();
-        params.putString(AV_PM_SEND_WHO, ali.from.unique);
+        params.putString(AV_PM_SEND_WHO, from.unique);
         params.putString(AV_PM_SEND_WHEN, KTime.ParseNow(KTime.KT_fmtDate3339fk).toString());
         mFirebaseAnalytics.logEvent(AN_EV_SEND, params);
     }
@@ -3,10 +3,7 @@ package com.coolftc.prompt;
 import static com.coolftc.prompt.utility.Constants.*;
 import android.app.Fragment;
 import android.app.FragmentManager;
-import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Typeface;
 import android.os.Handler;
 import android.os.Bundle;
@@ -20,22 +17,16 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.EditText;
 import android.widget.ImageView;
-import android.widget.ListView;
-import android.widget.SimpleAdapter;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.coolftc.prompt.source.MessageDB;
 import com.coolftc.prompt.utility.ExpClass;
-import com.coolftc.prompt.utility.ExpParseToCalendar;
-import com.coolftc.prompt.utility.KTime;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 /**
  *  The History is a display of all Reminders created on the local device. The
@@ -49,14 +40,16 @@ import java.util.TreeMap;
 public class History extends AppCompatActivity implements FragmentTalkBack{
 
     // The message list.
-    private ListView mListView;
+    private RecyclerView mListView;
+    private LinearLayoutManager mListLayout;
+    private final HistoryAdapter mAdapter = new HistoryAdapter();
     // The search box.
     private EditText mHistorySearch;
-    // The "reminder" collection of all the possible messages.
-    private List<Reminder> mReminders = new ArrayList< >();
-    // This is the mapping of the detail map to each specific message.
-    private String[] StatusMapFROM = {HS_REM_ID, HS_TIME, HS_RECURS, HS_SNOOZE, HS_LAST_15, HS_WHO_FROM, HS_WHO_TO, HS_MSG};
-    private int[] StatusMapTO = {R.id.rowh_Id, R.id.rowhTargetTime, R.id.rowhRecur, R.id.rowhSnooze, R.id.rowhNew, R.id.rowhTargetFrom, R.id.rowhTargetTo, R.id.rowhMessage};
+    // The messages loaded so far, with their display rows.  Replaced (never changed)
+    // each time the loader delivers a new page.
+    private HistoryLoader.Page mPage = HistoryLoader.Page.Empty();
+    private HistoryLoader mLoader;
+    private static final int PAGE_AHEAD = 10;       // Read the next page when this close to the end.
 
     // Handler used as a timer to trigger updates.
     private Handler hRefresh = new Handler();
@@ -70,16 +63,36 @@ public class History extends AppCompatActivity implements FragmentTalkBack{
         setContentView(R.layout.history);
         if (getSupportActionBar() != null) getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         mHistorySearch = (EditText) findViewById(R.id.txtSearch_HS);
-        mListView = (ListView) findViewById(R.id.listContacts_HS);
+        mListView = (RecyclerView) findViewById(R.id.listContacts_HS);
+        mListLayout = new LinearLayoutManager(this);
+        mListView.setLayoutManager(mListLayout);
+        mListView.setHasFixedSize(true);
+        mListView.setAdapter(mAdapter);
+        mLoader = new HistoryLoader(this, new HistoryLoader.Listener() {
+            @Override
+            public void onLoaded(HistoryLoader.Page page) { ShowDetailsCache(page); }
+        });
         ShowDetails("");
         hRefresh.postDelayed(rRefresh, UPD_SCREEN_TQ);
 
+        // As the user nears the bottom of what has been loaded, read the next page.
+        // This is also called (with no movement) when a layout changes what is visible.
+        mListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView view, int dx, int dy) {
+                int totalCount = mAdapter.getItemCount();
+                if (mPage.more && totalCount > 0 && mListLayout.findLastVisibleItemPosition() >= totalCount - PAGE_AHEAD) {
+                    mLoader.More(mPage);
+                }
+            }
+        });
+
         // As a user types in characters, trim the reminder list.
         mHistorySearch.addTextChangedListener(new TextWatcher() {
             // The "filter" contains all that has been typed into search.  Might want a debounce on this, too.
             // For example, ignore this event if 1 second has not elapsed since the last time it was fired.
             @Override
-            public void onTextChanged(CharSequence filter, int arg1, int arg2, int arg3) { ShowDetailsCache(filter.toString()); }
+            public void onTextChanged(CharSequence filter, int arg1, int arg2, int arg3) { ShowDetails(filter.toString()); }
             @Override
             public void beforeTextChanged(CharSequence arg0, int arg1, int arg2, int arg3) { }
             @Override
@@ -87,6 +100,13 @@ public class History extends AppCompatActivity implements FragmentTalkBack{
         });
     }
 
+    @Override
+    protected void onDestroy() {
+        hRefresh.removeCallbacks(rRefresh);
+        mLoader.Shutdown();
+        super.onDestroy();
+    }
+
     /*
      *  Go to the welcome screen to create more prompts.
      */
@@ -108,7 +128,7 @@ public class History extends AppCompatActivity implements FragmentTalkBack{
                     long uSelect = Long.parseLong(holdView.getText().toString());
 
                     // Now find the Reminder data and send it along (to save a trip to the database.
-                    for(Reminder msg : mReminders) {
+                    for(Reminder msg : mPage.reminders) {
                         if (msg.id == uSelect) {
                             Intent intent = new Intent(this, Detail.class);
                             Bundle mBundle = new Bundle();
@@ -155,126 +175,24 @@ public class History extends AppCompatActivity implements FragmentTalkBack{
 
     /*
      *  Load up the messages into the global list, then parse them out to the list view.
+     *  This starts over from the top, but keeps as many rows as were already loaded
+     *  (for the same search) so a refresh does not pull the list out from under the person.
+     *  The loading is done in the background, see HistoryLoader.
      */
     private void ShowDetails(String search) {
-        // Load up the messages from the database
-        GetMessages();
-        if(Settings.getPromptSortOrder(getApplicationContext()) == Settings.DEFAULT_SORT_ORDER)
-            Collections.sort(mReminders, Reminder.ByDeliveryDate);
-        else
-            Collections.sort(mReminders, Reminder.ByCreateDate);
-        ShowDetailsCache(search);
+        int order = Settings.getPromptSortOrder(getApplicationContext()) == Settings.DEFAULT_SORT_ORDER ? MessageDB.PAGE_BY_DELIVERY : MessageDB.PAGE_BY_CREATE;
+        int keep = search.equals(mPage.search) && order == mPage.order ? Math.max(HistoryLoader.PAGE_SIZE, mPage.pageCount) : HistoryLoader.PAGE_SIZE;
+        mLoader.Reload(order, search, keep);
     }
 
     /*
-     *  This is an optimization on the ShowDetails(), in that it just uses the existing
-     *  list of messages.  This makes the type ahead search much quicker, but will not
-     *  pick up any changes to the list.
+     *  Display a page of messages delivered by the loader.  The rows are already built,
+     *  so this just hands them to the list.  The adapter works out (in the background)
+     *  what changed, so only new or changed rows are bound and the scroll position holds.
      */
-    private void ShowDetailsCache(String search) {
-        // The "detail" hold the final data sent to the display list.
-        List<Map<String, String>> details = new ArrayList<>();
-        String waiting = getResources().getString(R.string.processing);
-
-        // Move the account data into the desired detail format.
-        for(Reminder msg : mReminders) {
-            Map<String, String> hold = new TreeMap<>();
-            if (!msg.Found(search)) continue;
-
-            // Hidden message id
-            hold.put(HS_REM_ID, msg.IdStr());
-            // Delivery time and indication if past.  If not processed, assume not in past.
-            hold.put(HS_TIME_PAST, msg.IsPromptPast());
-            if (msg.processed) {
-                hold.put(HS_TIME, msg.GetPromptTime(getApplicationContext()));
-            } else {
-                hold.put(HS_TIME, waiting);
-            }
-            // If message to self, skip it, otherwise show who created it.
-            if (!msg.IsSelfie()) {
-                hold.put(HS_WHO_FROM, msg.from.bestName());
-                hold.put(HS_WHO_TO, msg.target.bestName());
-            } else {
-                hold.put(HS_WHO_FROM, "");
-                hold.put(HS_WHO_TO, "");
-            }
-            // Check if recurring, just put anything in the value.
-            if (msg.recurUnit != RECUR_INVALID) {
-                hold.put(HS_RECURS, "X");
-            } else {
-                hold.put(HS_RECURS, "");
-            }
-            // Check if this note was ever snoozed.
-            if(msg.snoozeId > 0) {
-                hold.put(HS_SNOOZE, "X");
-            } else {
-                hold.put(HS_SNOOZE, "");
-            }
-            // Check if new (created in last x minutes)
-            hold.put(HS_LAST_15, "");
-            try {
-                if(KTime.CalcDateDifference(msg.created, KTime.ParseNow(KTime.KT_fmtDate3339fk, KTime.UTC_TIMEZONE).toString(), KTime.KT_fmtDate3339fk, KTime.KT_MINUTES) < 15){
-                    hold.put(HS_LAST_15, "X");
-                }
-            } catch (ExpParseToCalendar expParseToCalendar) {
-                /* Just skip it */
-            }
-            // The actual message
-            hold.put(HS_MSG, msg.message);
-            details.add(hold);
-        }
-
-        // Try to keep the listbox from scrolling on its own.
-        // See https://stackoverflow.com/questions/3014089/maintain-save-restore-scroll-position-when-returning-to-a-listview/5688490#5688490
-        int index = mListView.getFirstVisiblePosition();
-        View v = mListView.getChildAt(0);
-        int top = (v == null) ? 0 : (v.getTop() - mListView.getPaddingTop());
-        HistoryAdapter adapter = new HistoryAdapter(this, details, R.layout.contactpicker_row, StatusMapFROM, StatusMapTO);
-        mListView.setAdapter(adapter);
-        mListView.setSelectionFromTop(index, top);
-    }
-
-   /*
-    *  Read a large number of messages into an array.
-    *  This can be used later for the search
-    */
-    private void GetMessages(){
-        MessageDB message = new MessageDB(getApplicationContext());  // Be sure to close this before leaving the thread.
-        SQLiteDatabase db = message.getReadableDatabase();
-        String[] filler = {};
-        Cursor cursor = db.rawQuery(DB_MessagesAll, filler);
-        try{
-            mReminders.clear();
-            while(cursor.moveToNext()) {
-                Reminder local = new Reminder();
-                local.target = new Account();
-                local.from = new Account();
-                local.id = cursor.getLong(cursor.getColumnIndex(MessageDB.MESSAGE_ID));
-                local.serverId = cursor.getLong(cursor.getColumnIndex(MessageDB.MESSAGE_SRVR_ID));
-                local.targetTime = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_TIME));
-                local.targetTimeNameId = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_TIMENAME));
-                local.targetTimeAdjId = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_TIMEADJ));
-                local.sleepCycle = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_SLEEP));
-                local.timezone = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_TIMEZONE));
-                local.recurUnit = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_R_UNIT));
-                local.recurPeriod = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_R_PERIOD));
-                local.recurNumber = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_R_NUMBER));
-                local.recurEnd = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_R_END));
-                local.message = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_MSG));
-                local.processed = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_PROCESSED))==MessageDB.SQLITE_TRUE;
-                local.status = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_STATUS));
-                local.snoozeId = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_SNOOZE_ID));
-                local.created = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_CREATE));
-                local.from.unique = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_SOURCE));
-                local.from.display = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_FROM));
-                local.target.unique = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_TARGET));
-                local.target.display = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_NAME));
-                mReminders.add(local);
-            }
-            cursor.close();
-        } catch(Exception ex){ cursor.close(); ExpClass.Companion.logEX(ex, this.getClass().getName() + ".GetMessages"); }
-        finally { message.close(); }
-
+    private void ShowDetailsCache(HistoryLoader.Page page) {
+        mPage = page;
+        mAdapter.submitList(page.rows);
     }
 
     @Override
@@ -291,100 +209,74 @@ public class History extends AppCompatActivity implements FragmentTalkBack{
     public void newInvite(String [] addresses, String display, boolean mirror) { throw new UnsupportedOperationException(); }
 
     /*
-     *  The dialog has adjusted the sort parameters, resort and redisplay the data.
+     *  The dialog has adjusted the sort parameters, reload and redisplay the data.
      */
     @Override
     public void newSort() {
-        if(Settings.getPromptSortOrder(getApplicationContext()) == Settings.DEFAULT_SORT_ORDER)
-            Collections.sort(mReminders, Reminder.ByDeliveryDate);
-        else
-            Collections.sort(mReminders, Reminder.ByCreateDate);
-        ShowDetailsCache("");
+        ShowDetails(mHistorySearch.getText().toString());
     }
 
     /*
      * This provides a custom handling of the list of messages.  Other that formatting the displayed
-     * values, there is not too much special going on here.
-     * NOTE: Be sure to use match_parent (or specific values) for the height and width of the ListView
-     * and rows. Otherwise the getView is called A LOT! since it has to guess at sizing.
+     * values, there is not too much special going on here.  The rows never change once built, so
+     * the ListAdapter can diff one list against the next and only rebind what is different.
+     * NOTE: Be sure the row height is wrap_content (or a specific value), a match_parent row
+     * would fill the whole list.
      */
-    private class HistoryAdapter extends SimpleAdapter {
-        private static final int TYPE_ITEM = 0;
-        private static final int TYPE_MAX_COUNT = 1;
+    private static class HistoryAdapter extends ListAdapter<HistoryRow, HistoryAdapter.RowHolder> {
 
-        private LayoutInflater mInflater;
-
-        public HistoryAdapter(Context context, List<? extends Map<String, ?>> data, int resource, String[] from, int[] to) {
-            super(context, data, resource, from, to);
-            mInflater = (LayoutInflater)getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+        HistoryAdapter() {
+            super(HistoryRow.DIFF);
+            setHasStableIds(true);
         }
 
         @Override
-        public int getViewTypeCount() {
-            return TYPE_MAX_COUNT;
-        }
+        public long getItemId(int position) { return getItem(position).id; }
 
+        @NonNull
         @Override
-        public int getItemViewType(int position) { return TYPE_ITEM; }
+        public RowHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            // Use the parent context, so the android:onClick in the layout finds the activity.
+            return new RowHolder(LayoutInflater.from(parent.getContext()).inflate(R.layout.history_row, parent, false));
+        }
 
         @Override
-        public View getView(int position, View convertView, ViewGroup parent) {
-            int type = getItemViewType(position);
-            TextView holdView;
-            ImageView holdImage;
-
-            if (convertView == null) {
-                switch (type) {
-                    case TYPE_ITEM:
-                        convertView = mInflater.inflate(R.layout.history_row, null);
-                        break;
-                }
-            }
+        public void onBindViewHolder(@NonNull RowHolder holder, int position) {
+            HistoryRow row = getItem(position);
+            holder.id.setText(Long.toString(row.id));
+            holder.time.setText(row.time);
+            holder.time.setTypeface(null, row.past ? Typeface.NORMAL : Typeface.BOLD);  // not in the past, so bold
+            // Always need to reset these, since they are reused.
+            holder.recur.setVisibility(row.recurs ? View.VISIBLE : View.INVISIBLE);
+            holder.snooze.setVisibility(row.snoozed ? View.VISIBLE : View.INVISIBLE);
+            holder.recent.setVisibility(row.recent && row.whoFrom.length() == 0 ? View.VISIBLE : View.INVISIBLE);
+            holder.whoFrom.setText(row.whoFrom);
+            holder.whoTo.setText(row.whoTo);
+            holder.message.setText(row.message);
+        }
 
-            if (convertView != null) {
-                // NOTE: Unchecked cast is ok if you use the data close by,
-                // since that is what will trigger the runtime exception.
-                @SuppressWarnings("unchecked")
-                Map<String, String> holdData = (Map<String, String>) getItem(position);
-                holdView = (TextView) convertView.findViewById(R.id.rowh_Id);
-                holdView.setText(holdData.get(HS_REM_ID));
-                switch (type) {
-                    case TYPE_ITEM:
-                        holdView = (TextView) convertView.findViewById(R.id.rowhTargetTime);
-                        holdView.setText(holdData.get(HS_TIME));
-                        if(holdData.get(HS_TIME_PAST).length() == 0) {
-                            holdView.setTypeface(null, Typeface.BOLD);  // not in the past, so bold
-                        } else { // Always need to reset these, since they are reused.
-                            holdView.setTypeface(null, Typeface.NORMAL);
-                        }
-                        holdImage = (ImageView) convertView.findViewById(R.id.rowhRecur);
-                        if(holdData.get(HS_RECURS) != null && holdData.get(HS_RECURS).length() > 0) {
-                            holdImage.setVisibility(View.VISIBLE);
-                        } else { // Always need to reset these, since they are reused.
-                            holdImage.setVisibility(View.INVISIBLE);
-                        }
-                        holdImage = (ImageView) convertView.findViewById(R.id.rowhSnooze);
-                        if(holdData.get(HS_SNOOZE) != null && holdData.get(HS_SNOOZE).length() > 0) {
-                            holdImage.setVisibility(View.VISIBLE);
-                        } else { // Always need to reset these, since they are reused.
-                            holdImage.setVisibility(View.INVISIBLE);
-                        }
-                        holdView = (TextView) convertView.findViewById(R.id.rowhNew);
-                        if(holdData.get(HS_LAST_15) != null && holdData.get(HS_LAST_15).length() > 0 && holdData.get(HS_WHO_FROM).length() == 0) {
-                            holdView.setVisibility(View.VISIBLE);
-                        }else{ // Always need to reset these, since they are reused.
-                            holdView.setVisibility(View.INVISIBLE);
-                        }
-                        holdView = (TextView) convertView.findViewById(R.id.rowhTargetFrom);
-                        holdView.setText(holdData.get(HS_WHO_FROM));
-                        holdView = (TextView) convertView.findViewById(R.id.rowhTargetTo);
-                        holdView.setText(holdData.get(HS_WHO_TO));
-                        holdView = (TextView) convertView.findViewById(R.id.rowhMessage);
-                        holdView.setText(holdData.get(HS_MSG));
-                        break;
-                }
+        // Holds on to the row views, so they are only looked up once.
+        static class RowHolder extends RecyclerView.ViewHolder {
+            final TextView id;
+            final TextView time;
+            final ImageView recur;
+            final ImageView snooze;
+            final TextView recent;
+            final TextView whoFrom;
+            final TextView whoTo;
+            final TextView message;
+
+            RowHolder(View row) {
+                super(row);
+                id = (TextView) row.findViewById(R.id.rowh_Id);
+                time = (TextView) row.findViewById(R.id.rowhTargetTime);
+                recur = (ImageView) row.findViewById(R.id.rowhRecur);
+                snooze = (ImageView) row.findViewById(R.id.rowhSnooze);
+                recent = (TextView) row.findViewById(R.id.rowhNew);
+                whoFrom = (TextView) row.findViewById(R.id.rowhTargetFrom);
+                whoTo = (TextView) row.findViewById(R.id.rowhTargetTo);
+                message = (TextView) row.findViewById(R.id.rowhMessage);
             }
-            return convertView;
         }
     }
 
@@ -402,7 +294,7 @@ public class History extends AppCompatActivity implements FragmentTalkBack{
                 ShowDetails(holdSearch);
                 hRefresh.postDelayed(this, UPD_SCREEN_TQ);
             } else {
-                ShowDetailsCache(holdSearch);
+                mLoader.Redisplay(mPage);
                 hRefresh.postDelayed(this, UPD_SCREEN_TM);
             }
         }
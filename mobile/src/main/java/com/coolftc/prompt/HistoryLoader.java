@@ -0,0 +1,278 @@
+package com.coolftc.prompt;
+
+import static com.coolftc.prompt.utility.Constants.*;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.coolftc.prompt.source.MessageDB;
+import com.coolftc.prompt.utility.ExpClass;
+import com.coolftc.prompt.utility.KTime;
+import com.coolftc.prompt.utility.Lanes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  Loads the History list in the background.  The database reads and the building
+    of the display rows happen on the PREFETCH lane (see Lanes), and only the finished Page is
+    posted back to the UI thread.  The Page is never changed after it is built,
+    so the UI can hold on to it without any locking.
+    Every new load bumps the generation.  Any older load that is still running
+    notices this and stops, and if it does manage to finish, its result is dropped.
+    This way a refresh or search keystroke replaces work in flight rather than
+    queueing up behind it.
+
+ *  NOTE: Apart from the worker itself, all the methods are expected to be called
+    from the UI thread.
+ */
+class HistoryLoader {
+    static final int PAGE_SIZE = 50;        // Rows read per page.
+    private static final long RECENT_MSEC = 15 * 60 * 1000;   // Created this recently is marked new.
+
+    // Receives the finished page, on the UI thread.
+    interface Listener {
+        void onLoaded(Page page);
+    }
+
+    /*
+     *  The messages loaded so far and the display rows for them, along with the
+     *  key (time + id) of the last paged row, so the next page can pick up from it.
+     */
+    static final class Page {
+        final List<Reminder> reminders;
+        final List<HistoryRow> rows;
+        final int order;
+        final String search;
+        final long pageTime;
+        final long pageId;
+        final int pageCount;        // Number of paged rows loaded.
+        final boolean more;         // False once the last page has been read.
+
+        Page(List<Reminder> reminders, List<HistoryRow> rows, int order, String search,
+             long pageTime, long pageId, int pageCount, boolean more) {
+            this.reminders = Collections.unmodifiableList(reminders);
+            this.rows = Collections.unmodifiableList(rows);
+            this.order = order;
+            this.search = search;
+            this.pageTime = pageTime;
+            this.pageId = pageId;
+            this.pageCount = pageCount;
+            this.more = more;
+        }
+
+        static Page Empty() {
+            return new Page(new ArrayList<Reminder>(), new ArrayList<HistoryRow>(), MessageDB.PAGE_BY_DELIVERY, "",
+                    MessageDB.PAGE_FIRST, MessageDB.PAGE_FIRST, 0, false);
+        }
+    }
+
+    private final Context mContext;
+    private final Listener mListener;
+    private final Handler mMain = new Handler(Looper.getMainLooper());
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private Future<?> mTask;
+    private boolean mBusy = false;      // True while a result is expected, but not yet delivered.
+
+    HistoryLoader(Context context, Listener listener) {
+        mContext = context.getApplicationContext();
+        mListener = listener;
+    }
+
+    /*
+     *  Start the list over from the top.  When sorting by delivery, the messages still
+     *  waiting on the server go first, then the first "limit" delivered messages.
+     */
+    void Reload(final int order, final String search, final int limit) {
+        Submit(new Work() {
+            @Override
+            public Page Load(int gen) {
+                List<Reminder> reminders = new ArrayList<>();
+                if (order == MessageDB.PAGE_BY_DELIVERY) {
+                    ReadUnprocessed(search, reminders, gen);
+                }
+                return ReadPage(new Page(reminders, new ArrayList<HistoryRow>(), order, search,
+                        MessageDB.PAGE_FIRST, MessageDB.PAGE_FIRST, 0, true), limit, gen);
+            }
+        });
+    }
+
+    // Read the next page onto the end of the current one.  Ignored if already loading.
+    void More(final Page current) {
+        if (mBusy || !current.more) return;
+        Submit(new Work() {
+            @Override
+            public Page Load(int gen) { return ReadPage(current, PAGE_SIZE, gen); }
+        });
+    }
+
+    // Rebuild the display rows (the relative times change), without reading the database.
+    void Redisplay(final Page current) {
+        if (mBusy) return;
+        Submit(new Work() {
+            @Override
+            public Page Load(int gen) {
+                return new Page(current.reminders, BuildRows(current.reminders, 0, new ArrayList<HistoryRow>(), gen),
+                        current.order, current.search, current.pageTime, current.pageId, current.pageCount, current.more);
+            }
+        });
+    }
+
+    // Drop anything in flight.  Call when the screen goes away.
+    void Shutdown() {
+        mGeneration.incrementAndGet();
+        if (mTask != null) mTask.cancel(true);
+        mMain.removeCallbacksAndMessages(null);
+    }
+
+    private interface Work {
+        Page Load(int gen);
+    }
+
+    /*
+     *  Cancel whatever is running and start the new work.  The result is only delivered
+     *  if no newer work was submitted in the meantime.
+     */
+    private void Submit(final Work work) {
+        final int gen = mGeneration.incrementAndGet();
+        if (mTask != null) mTask.cancel(true);
+        mBusy = true;
+        mTask = Lanes.submit(Lanes.Lane.PREFETCH, new Runnable() {
+            @Override
+            public void run() {
+                Page page = null;
+                try {
+                    page = work.Load(gen);
+                } catch (CancellationException ex) {
+                    return; // Replaced by newer work, which will clear the busy flag.
+                } catch (Exception ex) {
+                    ExpClass.Companion.logEX(ex, HistoryLoader.class.getName() + ".Submit");
+                }
+                final Page result = page;
+                mMain.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (gen != mGeneration.get()) return;
+                        mBusy = false;
+                        if (result != null) mListener.onLoaded(result);
+                    }
+                });
+            }
+        });
+        if (mTask == null) mBusy = false;    // The lane is full, the next request will try again.
+    }
+
+    private void CheckCancel(int gen) {
+        if (gen != mGeneration.get() || Thread.currentThread().isInterrupted()) throw new CancellationException();
+    }
+
+    private void ReadUnprocessed(String search, List<Reminder> reminders, int gen) {
+        MessageDB message = MessageDB.getInstance(mContext);
+        Cursor cursor = null;
+        try {
+            cursor = message.GetUnprocessed(search);
+            while (cursor.moveToNext()) {
+                CheckCancel(gen);
+                reminders.add(ReadReminder(cursor));
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /*
+     *  Read the next "limit" messages after the last one in the page, and return a new
+     *  page with them (and their display rows) added on.  The existing rows are reused.
+     */
+    private Page ReadPage(Page current, int limit, int gen) {
+        List<Reminder> reminders = new ArrayList<>(current.reminders);
+        int start = current.rows.size();
+        List<HistoryRow> rows = new ArrayList<>(current.rows);
+        long pageTime = current.pageTime;
+        long pageId = current.pageId;
+        int read = 0;
+
+        MessageDB message = MessageDB.getInstance(mContext);
+        Cursor cursor = null;
+        try {
+            cursor = message.GetPage(current.order, pageTime, pageId, limit, current.search);
+            int timeNdx = cursor.getColumnIndex(MessageDB.PageTimeColumn(current.order));
+            while (cursor.moveToNext()) {
+                CheckCancel(gen);
+                Reminder local = ReadReminder(cursor);
+                pageTime = cursor.getLong(timeNdx);
+                pageId = local.id;
+                reminders.add(local);
+                read++;
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        BuildRows(reminders, start, rows, gen);
+        return new Page(reminders, rows, current.order, current.search, pageTime, pageId, current.pageCount + read, read == limit);
+    }
+
+    // Build a Reminder from the current row.
+    private Reminder ReadReminder(Cursor cursor) {
+        Reminder local = new Reminder();
+        local.target = new Account();
+        local.from = new Account();
+        local.id = cursor.getLong(cursor.getColumnIndex(MessageDB.MESSAGE_ID));
+        local.serverId = cursor.getLong(cursor.getColumnIndex(MessageDB.MESSAGE_SRVR_ID));
+        local.targetTime = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_TIME));
+        local.targetTimeNameId = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_TIMENAME));
+        local.targetTimeAdjId = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_TIMEADJ));
+        local.sleepCycle = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_SLEEP));
+        local.timezone = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_TIMEZONE));
+        local.recurUnit = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_R_UNIT));
+        local.recurPeriod = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_R_PERIOD));
+        local.recurNumber = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_R_NUMBER));
+        local.recurEnd = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_R_END));
+        local.message = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_MSG));
+        local.processed = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_PROCESSED))==MessageDB.SQLITE_TRUE;
+        local.status = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_STATUS));
+        local.snoozeId = cursor.getInt(cursor.getColumnIndex(MessageDB.MESSAGE_SNOOZE_ID));
+        local.created = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_CREATE));
+        local.from.unique = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_SOURCE));
+        local.from.display = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_FROM));
+        local.target.unique = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_TARGET));
+        local.target.display = cursor.getString(cursor.getColumnIndex(MessageDB.MESSAGE_NAME));
+        local.PrimeMSec(cursor.getLong(cursor.getColumnIndex(MessageDB.MESSAGE_TIME_MS)),
+                        cursor.getLong(cursor.getColumnIndex(MessageDB.MESSAGE_CREATE_MS)));
+        return local;
+    }
+
+    /*
+     *  Move the reminder data, from "start" on, into the display rows.
+     */
+    private List<HistoryRow> BuildRows(List<Reminder> reminders, int start, List<HistoryRow> rows, int gen) {
+        String waiting = mContext.getResources().getString(R.string.processing);
+        long now = System.currentTimeMillis();
+
+        for (int i = start; i < reminders.size(); i++) {
+            CheckCancel(gen);
+            Reminder msg = reminders.get(i);
+            // Check if new (created in last x minutes)
+            long created = msg.CreatedMSec();
+            boolean recent = created != KTime.KT_INVALID && Math.abs(now - created) < RECENT_MSEC;
+            // If message to self, skip who created it.  If not processed, assume not in past.
+            rows.add(new HistoryRow(
+                    msg.id,
+                    msg.processed ? msg.GetPromptTime(mContext) : waiting,
+                    msg.IsPast(),
+                    msg.IsSelfie() ? "" : msg.from.bestName(),
+                    msg.IsSelfie() ? "" : msg.target.bestName(),
+                    msg.recurUnit != RECUR_INVALID,
+                    msg.snoozeId > 0,
+                    recent,
+                    msg.message));
+        }
+        return rows;
+    }
+}
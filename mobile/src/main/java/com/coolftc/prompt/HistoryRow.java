@@ -0,0 +1,66 @@
+package com.coolftc.prompt;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+
+/**
+ *  The display values for one row of the History list.  These are built in the
+    background by the HistoryLoader and never change afterwards, so comparing two
+    rows (see DIFF) is enough to know if the row on screen needs to be rebound.
+ */
+final class HistoryRow {
+    final long id;              // The local message id.
+    final String time;          // Delivery time, or "Processing..." if not yet sent.
+    final boolean past;         // Delivery time is in the past.
+    final String whoFrom;       // Blank when the message is to self.
+    final String whoTo;
+    final boolean recurs;
+    final boolean snoozed;
+    final boolean recent;       // Created in the last few minutes.
+    final String message;
+
+    HistoryRow(long id, String time, boolean past, String whoFrom, String whoTo,
+               boolean recurs, boolean snoozed, boolean recent, String message) {
+        this.id = id;
+        this.time = time;
+        this.past = past;
+        this.whoFrom = whoFrom;
+        this.whoTo = whoTo;
+        this.recurs = recurs;
+        this.snoozed = snoozed;
+        this.recent = recent;
+        this.message = message;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof HistoryRow)) return false;
+        HistoryRow row = (HistoryRow) other;
+        return id == row.id && past == row.past && recurs == row.recurs && snoozed == row.snoozed &&
+               recent == row.recent && Same(time, row.time) && Same(whoFrom, row.whoFrom) &&
+               Same(whoTo, row.whoTo) && Same(message, row.message);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (id ^ (id >>> 32));
+    }
+
+    private static boolean Same(String one, String two) {
+        return one == null ? two == null : one.equals(two);
+    }
+
+    // The same message is the same item, if anything else changed it needs rebinding.
+    static final DiffUtil.ItemCallback<HistoryRow> DIFF = new DiffUtil.ItemCallback<HistoryRow>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull HistoryRow oldRow, @NonNull HistoryRow newRow) {
+            return oldRow.id == newRow.id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull HistoryRow oldRow, @NonNull HistoryRow newRow) {
+            return oldRow.equals(newRow);
+        }
+    };
+}
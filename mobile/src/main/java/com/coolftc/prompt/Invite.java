@@ -12,6 +12,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.coolftc.prompt.service.CancelFriendThread;
 import com.coolftc.prompt.service.SendInviteThread;
+import com.coolftc.prompt.utility.Lanes;
 import com.google.i18n.phonenumbers.NumberParseException;
 import com.google.i18n.phonenumbers.PhoneNumberUtil;
 import com.google.i18n.phonenumbers.Phonenumber;
@@ -118,8 +119,12 @@ public class Invite extends AppCompatActivity {
      */
     public void PickCancelInvite(View view) {
         if(mAccount != null){
+            // If the lane is full, stay here so the cancel can be tried again.
             CancelFriendThread cft = new CancelFriendThread(getApplicationContext(), mAccount);
-            cft.start();
+            if (Lanes.submit(Lanes.Lane.NETWORK, cft) == null) {
+                Toast.makeText(this, R.string.msgBusy, Toast.LENGTH_LONG).show();
+                return;
+            }
         }
 
         onBackPressed();
@@ -151,8 +156,12 @@ public class Invite extends AppCompatActivity {
         }
 
         if (addresses[0].length() > 0) {
+            // If the lane is full, stay here so the invite can be sent again.
             SendInviteThread smt = new SendInviteThread(getApplicationContext(), addresses, display, mirror);
-            smt.start();
+            if (Lanes.submit(Lanes.Lane.NETWORK, smt) == null) {
+                Toast.makeText(this, R.string.msgBusy, Toast.LENGTH_LONG).show();
+                return;
+            }
             finish();
         } else {
             Toast.makeText(getApplicationContext(), R.string.err_no_contact, Toast.LENGTH_LONG).show();
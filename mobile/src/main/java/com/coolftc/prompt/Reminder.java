@@ -9,7 +9,8 @@ import com.coolftc.prompt.utility.KTime;
 import java.io.Serializable;
 import java.util.Calendar;
 import java.util.Comparator;
-import java.util.TimeZone;
+import java.util.Locale;
+import java.util.SimpleTimeZone;
 import static com.coolftc.prompt.utility.Constants.*;
 
 /**
@@ -29,7 +30,6 @@ public class Reminder  implements Serializable {
     // When a message is sent, the server provides the exact time that it will ultimately be sent.
     // It is stored in KTime.KT_fmtDate3339f for use with API.
     public String targetTime = "";
-    private boolean mTartgetTimePast = false;    // used as a cache since once in the past, always...
 
     // Simplified time.
     public int targetTimeNameId = 0;        // Time name code.
@@ -49,6 +49,13 @@ public class Reminder  implements Serializable {
     public int status = 0;              // If there are any issues, the code is stored here.
     public String created = "";         // The timestamp of when the message was created.
 
+    // The targetTime and created parsed to epoch msec (or KT_INVALID), done on first use.
+    // Each keeps the string it was parsed from, so just assigning a new time resets it.
+    private transient String mTargetSrc;
+    private transient long mTargetMSec;
+    private transient String mCreatedSrc;
+    private transient long mCreatedMSec;
+
     // Use constants instead of enums in java to save on resources.
     private static final int PROMPT = 1;
     private static final int RECURRING = 2;
@@ -77,14 +84,11 @@ public class Reminder  implements Serializable {
     public boolean IsExactTime(){ return targetTimeNameId == 0 && targetTime.length() > 0; }
 
     /*
-     *  This method will search a few of the fields to determine if the
-     *  search "term" is contained in it.  It is a helper to aid in the
-     *  determination if the message is of interest. Using toLowerCase
-     *  make it case insensitive.
+     *  The text a search looks at to see if the message is of interest,
+     *  that is, who it is to and what it says (one per line).
      */
-    public boolean Found(String term) {
-        String lowTerm = term.toLowerCase();
-        return (term.length() == 0 || target.display.toLowerCase().contains(lowTerm) || message.toLowerCase().contains(lowTerm));
+    public String SearchKey() {
+        return target.display + "\n" + message;
     }
 
     /*
@@ -97,59 +101,86 @@ public class Reminder  implements Serializable {
      */
     private String GetFormattedTime(Context context, int ts){
         String holdTimeStamp;
+        long when;
         int holdFormat;
         switch (ts){
             case PROMPT:
                 holdTimeStamp = targetTime;
+                when = TargetMSec();
                 holdFormat = DATE_TIME_FMT_SHORT;
                 break;
             case RECURRING:
                 holdTimeStamp = recurEnd;
+                when = KTime.Parse3339(recurEnd);
                 holdFormat = DATE_TIME_FMT_SHORT;
                 break;
             case CREATED:
                 holdTimeStamp = created;
+                when = CreatedMSec();
                 holdFormat = DATE_TIME_FMT_SHORT;
                 break;
             case DETAIL:
                 holdTimeStamp = targetTime;
+                when = TargetMSec();
                 holdFormat = DATE_TIME_FMT_REV;
                 break;
             default:
                 return context.getResources().getString(R.string.unknown);
         }
-        if (holdTimeStamp.length() == 0) return context.getResources().getString(R.string.unknown);
-        Calendar delivery;
+        if (when == KTime.KT_INVALID) return context.getResources().getString(R.string.unknown);
+        long offset = KTime.Parse3339Offset(holdTimeStamp);
         String dateTimeFmt = Settings.getDateDisplayFormat(context, holdFormat);
-        boolean isUTC = KTime.ParseOffset(holdTimeStamp, KTime.KT_fmtDate3339fk, KTime.KT_SECONDS) == 0;
-        try {
-            if(isUTC) {
-                delivery = KTime.ConvertTimezone(KTime.ParseToCalendar(holdTimeStamp, KTime.KT_fmtDate3339fk, KTime.UTC_TIMEZONE), TimeZone.getDefault().getID());
-            } else {
-                delivery = KTime.ParseToCalendar(holdTimeStamp, KTime.KT_fmtDate3339fk);
-            }
-            return DateFormat.format(dateTimeFmt, delivery).toString();
-        } catch (ExpParseToCalendar expParseToCalendar) {
-            return context.getResources().getString(R.string.unknown);
+        Calendar delivery;
+        if(offset == 0) {
+            delivery = Calendar.getInstance();
+        } else {
+            int mins = (int) (Math.abs(offset) / (60 * 1000));
+            String name = String.format(Locale.US, "GMT%s%02d:%02d", offset < 0 ? "-" : "+", mins / 60, mins % 60);
+            delivery = Calendar.getInstance(new SimpleTimeZone((int) offset, name));
         }
+        delivery.setTimeInMillis(when);
+        return DateFormat.format(dateTimeFmt, delivery).toString();
+    }
+
+    /*
+     *  The targetTime and created as epoch msec, or KT_INVALID if missing or
+     *  not readable.  The strings are only parsed again if they are changed.
+     *  Like the rest of the class, this is not thread safe, so a Reminder
+     *  should only be used by one thread at a time.
+     */
+    public long TargetMSec() {
+        if (mTargetSrc != targetTime || mTargetSrc == null) {
+            mTargetMSec = KTime.Parse3339(targetTime);
+            mTargetSrc = targetTime;
+        }
+        return mTargetMSec;
+    }
+
+    public long CreatedMSec() {
+        if (mCreatedSrc != created || mCreatedSrc == null) {
+            mCreatedMSec = KTime.Parse3339(created);
+            mCreatedSrc = created;
+        }
+        return mCreatedMSec;
+    }
+
+    /*
+     *  When the times are read from the database, the epoch versions are stored
+     *  with them (zero when not readable), so there is no need to parse them.
+     */
+    public void PrimeMSec(long targetMSec, long createdMSec) {
+        mTargetSrc = targetTime;
+        mTargetMSec = targetMSec != 0 ? targetMSec : KTime.KT_INVALID;
+        mCreatedSrc = created;
+        mCreatedMSec = createdMSec != 0 ? createdMSec : KTime.KT_INVALID;
     }
 
     /*
      *  Return the Prompt time as an epoch number.
      */
     public long GetPromptMSec() {
-        Calendar ali;
-        boolean isUTC = KTime.ParseOffset(targetTime, KTime.KT_fmtDate3339fk, KTime.KT_SECONDS) == 0;
-        try {
-            if(isUTC) {
-                ali = KTime.ConvertTimezone(KTime.ParseToCalendar(targetTime, KTime.KT_fmtDate3339fk, KTime.UTC_TIMEZONE), TimeZone.getDefault().getID());
-            } else {
-                ali = KTime.ParseToCalendar(targetTime, KTime.KT_fmtDate3339fk);
-            }
-            return ali.getTimeInMillis();
-        } catch (ExpParseToCalendar expParseToCalendar) {
-            return Calendar.getInstance().getTimeInMillis();
-        }
+        long when = TargetMSec();
+        return when != KTime.KT_INVALID ? when : System.currentTimeMillis();
     }
 
     /*
@@ -158,17 +189,8 @@ public class Reminder  implements Serializable {
      */
     public boolean IsPast() {
         if (!processed) return false;
-        if (mTartgetTimePast) return true;
-        try {
-            if (KTime.IsPast(targetTime, KTime.KT_fmtDate3339fk)) {
-                mTartgetTimePast = true;
-                return true;
-            } else {
-                return false;
-            }
-        } catch (ExpParseToCalendar expParseToCalendar) {
-            return false;
-        }
+        long when = TargetMSec();
+        return when != KTime.KT_INVALID && when < System.currentTimeMillis();
     }
 
     /*
@@ -282,7 +304,7 @@ public class Reminder  implements Serializable {
         public int compare(Reminder r1, Reminder r2) {
             if (r1 != null && r2 != null) {
                 //descending order
-                return r2.created.compareTo(r1.created);
+                return Long.compare(r2.CreatedMSec(), r1.CreatedMSec());
             }
             return 0;  // indeterminate
         }
@@ -302,11 +324,8 @@ public class Reminder  implements Serializable {
             if (r1 == null || r2 == null) return 0;
             if (!r1.processed) return -1;
             if (!r2.processed) return 1;
-            if (r1.targetTime != null && r2.targetTime != null) {
-                //descending order
-                return r2.targetTime.compareTo(r1.targetTime);
-            }
-            return 0;  // indeterminate
+            //descending order, compared as instants since the offsets can differ
+            return Long.compare(r2.TargetMSec(), r1.TargetMSec());
         }
     };
 }
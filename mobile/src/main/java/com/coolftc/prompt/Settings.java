@@ -22,6 +22,10 @@ import static com.coolftc.prompt.utility.Constants.*;
     This class provides a simple wrapper to read data from the Preferences and
     optionally format it in some desired way. It also alleviates worries about
     initialization.
+    The values are read once into an immutable Snapshot, with any parsing and
+    formatting already done, so the "get" methods are just a field read.  The
+    Snapshot is replaced by a listener whenever a preference changes (and right
+    away by the "set" methods here, as the listener runs a little later).
 
  *  This activity uses a fragment to do all the screen work, including the
     listener that can sync the personal items back to the Account and
@@ -33,7 +37,8 @@ import static com.coolftc.prompt.utility.Constants.*;
     1) Create a node in the settings.xml layout to define the UI.
         Use prf_Title/prf_TitleSum/prf_TitleDefault for resource string names.
     2) Create an id (PREF_*) constant below that matches the key in settings.xml.
-    3) Create a "get" access method.  Add any special formatting as necessary.
+    3) Add it to the Snapshot (with any special formatting) and create a "get"
+       access method that reads it from Current().
     4) Add any code to dynamically adjust the summary (in SettingsBasic) if necessary.
 
  * Dependencies
@@ -65,6 +70,64 @@ public class Settings extends AppCompatActivity {
     public static final String PREF_SORT_ORDER = "prompt.sortorder";
     public static final int DEFAULT_SORT_ORDER = 0;
 
+    private static volatile Snapshot sSnapshot;
+    // Held here, as the preferences only keep a weak reference to their listeners.
+    private static SharedPreferences.OnSharedPreferenceChangeListener sWatch;
+
+    /*
+     *  The settings as of the last change.  Nothing in here changes, a new Snapshot
+     *  replaces it.
+     */
+    public static final class Snapshot {
+        public final String displayName;
+        public final int sleepCycle;
+        public final int nameSortOrder;
+        public final Uri ringtone;
+        public final boolean vibrateOn;
+        public final boolean contactsOk;
+        public final int snooze;
+        public final boolean use24Clock;
+        public final String pickShortDateFmt;
+        public final int promptSortOrder;
+        public final boolean soundCopied;
+        // The getDateDisplayFormat() answers.
+        final String dateFmtShort;
+        final String dateTimeFmtShort;
+        final String dateTimeFmtRev;
+
+        Snapshot(Context context, SharedPreferences prefs) {
+            String defaultRingtone = String.format(Locale.getDefault(), "android.resource://%s/%d",context.getPackageName(),R.raw.promptbeep);
+            displayName = prefs.getString(PREF_DISPNAME, "");
+            sleepCycle = parseInt(prefs.getString(PREF_SCYCLE, "2"), 0);
+            nameSortOrder = prefs.getInt(PREF_NAMESORT, DEFAULT_SORT_ORDER);
+            ringtone = Uri.parse(prefs.getString(PREF_SOUND, defaultRingtone));
+            vibrateOn = prefs.getBoolean(PREF_VIBRATEON, DEFAULT_VIBRATEON);
+            contactsOk = prefs.getBoolean(PREF_CONTACTS, DEFAULT_CONTACTS);
+            snooze = parseInt(prefs.getString(PREF_SNOOZE, "60"), 60);
+            use24Clock = prefs.getBoolean(PREF_USE24CLOCK, DEFAULT_USE24CLOCK);
+            pickShortDateFmt = prefs.getString(PREF_PICKSHORTDATEFMT, DEFAULT_PICKSHORTDATEFMT);
+            promptSortOrder = prefs.getInt(PREF_SORT_ORDER, DEFAULT_SORT_ORDER);
+            soundCopied = prefs.getBoolean(PREF_SOUND_AVAILABLE, DEFAULT_SOUND_AVAILABLE);
+
+            String date = DB_fmtDateShrtMiddle;
+            if ("big".equalsIgnoreCase(pickShortDateFmt)) date = DB_fmtDateShrtBig;
+            if ("sml".equalsIgnoreCase(pickShortDateFmt)) date = DB_fmtDateShrtLittle;
+            String time = use24Clock ? DB_fmtDateTime24 : DB_fmtDateTime;
+            dateFmtShort = date;
+            dateTimeFmtShort = date + " @ " + time;
+            dateTimeFmtRev = time + " on " + date;
+        }
+
+        private static int parseInt(String value, int fallback) {
+            if (value == null) return fallback;
+            try { return Integer.parseInt(value); }
+            catch (NumberFormatException ex) {
+                ExpClass.Companion.logEX(ex, "Settings.Snapshot.parseInt");
+                return fallback;
+            }
+        }
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -74,9 +137,34 @@ public class Settings extends AppCompatActivity {
                 .commit();
     }
 
+    /*
+     *  The current settings.  The first call reads them and starts listening for changes.
+     */
+    public static Snapshot Current(Context context) {
+        Snapshot current = sSnapshot;
+        if (current != null) return current;
+        synchronized (Settings.class) {
+            if (sSnapshot == null) {
+                final Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+                SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+                sWatch = (changed, key) -> sSnapshot = new Snapshot(appContext, changed);
+                prefs.registerOnSharedPreferenceChangeListener(sWatch);
+                sSnapshot = new Snapshot(appContext, prefs);
+            }
+            return sSnapshot;
+        }
+    }
+
+    // Used by the "set" methods, so the change can be read back right away.
+    private static void Reload(Context context) {
+        Current(context);
+        Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        sSnapshot = new Snapshot(appContext, PreferenceManager.getDefaultSharedPreferences(appContext));
+    }
+
     // What name is stored in preferences.
     public static String getDisplayName(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getString(PREF_DISPNAME, "");
+        return Current(context).displayName;
     }
 
     // Allow name update to be adjusted programmatically (to initialized it).
@@ -85,17 +173,17 @@ public class Settings extends AppCompatActivity {
         SharedPreferences.Editor ali = PreferenceManager.getDefaultSharedPreferences(context).edit();
         ali.putString(PREF_DISPNAME, name);
         ali.apply();
+        Reload(context);
     }
 
     // What sleep cycle is stored in preferences.
     public static int getSleepCycle(Context context) {
-        String holdAnswer = PreferenceManager.getDefaultSharedPreferences(context).getString(PREF_SCYCLE, "2");
-        return holdAnswer != null ? Integer.parseInt(holdAnswer) : 0;
+        return Current(context).sleepCycle;
     }
 
     // How names should be sorted as stored in preferences.
     public static int getNameSortOrder(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getInt(PREF_NAMESORT, DEFAULT_SORT_ORDER);
+        return Current(context).nameSortOrder;
     }
 
     // Shortcut to see if sorting by last name, which is not the default.
@@ -108,44 +196,42 @@ public class Settings extends AppCompatActivity {
         SharedPreferences.Editor ali = PreferenceManager.getDefaultSharedPreferences(context).edit();
         ali.putInt(PREF_NAMESORT, sort);
         ali.apply();
+        Reload(context);
     }
 
     // The ringtone to be used for notifications, but only matters below Android v8.
     public static Uri getRingtone(Context context){
-        String defaultRingtone = String.format(Locale.getDefault(), "android.resource://%s/%d",context.getPackageName(),R.raw.promptbeep);
-        String holdAnswer = PreferenceManager.getDefaultSharedPreferences(context).getString(PREF_SOUND, defaultRingtone);
-        return Uri.parse(holdAnswer);
+        return Current(context).ringtone;
     }
 
     // When true, have the device vibrate on incoming prompts.
     public static boolean getVibrateOn(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(PREF_VIBRATEON, DEFAULT_VIBRATEON);
+        return Current(context).vibrateOn;
     }
 
     // When true, continue to ask to use the Contacts.
     public static boolean getContactsOk(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(PREF_CONTACTS, DEFAULT_CONTACTS);
+        return Current(context).contactsOk;
     }
 
     // What snooze lenght is stored in preferences.
     public static int getSnooze(Context context) {
-        String holdAnswer = PreferenceManager.getDefaultSharedPreferences(context).getString(PREF_SNOOZE, "60");
-        return holdAnswer != null ? Integer.parseInt(holdAnswer) : 60;
+        return Current(context).snooze;
     }
 
     // When true, display time in a 24 hour format.
     public static boolean getUse24Clock(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(PREF_USE24CLOCK, DEFAULT_USE24CLOCK);
+        return Current(context).use24Clock;
     }
 
     // Select how the day/month/year is ordered in displaying dates.
     public static String getPickShortDateFmt(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getString(PREF_PICKSHORTDATEFMT, DEFAULT_PICKSHORTDATEFMT);
+        return Current(context).pickShortDateFmt;
     }
 
     // Return which sort order is in effect for prompts.
     public static int getPromptSortOrder(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getInt(PREF_SORT_ORDER, DEFAULT_SORT_ORDER);
+        return Current(context).promptSortOrder;
     }
 
     // Allow non-settings screen to update this value.
@@ -153,11 +239,12 @@ public class Settings extends AppCompatActivity {
         SharedPreferences.Editor ali = PreferenceManager.getDefaultSharedPreferences(context).edit();
         ali.putInt(PREF_SORT_ORDER, sort);
         ali.apply();
+        Reload(context);
     }
 
     // Check if the default notification sound has been copied locally to the device.
     public static boolean isSoundCopied(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(PREF_SOUND_AVAILABLE, DEFAULT_SOUND_AVAILABLE);
+        return Current(context).soundCopied;
     }
 
     // Called after a successful copy of the notification sound, so we do not bother with it again.
@@ -165,6 +252,7 @@ public class Settings extends AppCompatActivity {
         SharedPreferences.Editor ali = PreferenceManager.getDefaultSharedPreferences(context).edit();
         ali.putBoolean(PREF_SOUND_AVAILABLE, done);
         ali.apply();
+        Reload(context);
     }
 
     /*
@@ -173,49 +261,16 @@ public class Settings extends AppCompatActivity {
      * ENUMs generate a lot of overhead in Java, so we will stick to constant int as the date type.
      */
     public static String getDateDisplayFormat(Context context, int datetype) {
-
-        String holdFmt;
-        String fmt = getPickShortDateFmt(context);
-        String tmt = getUse24Clock(context) ? DB_fmtDateTime24 : DB_fmtDateTime;
-
+        Snapshot current = Current(context);
         switch (datetype){
-
             case DATE_FMT_SHORT:
-                try {
-                    holdFmt = DB_fmtDateShrtMiddle;
-                    if (fmt.equalsIgnoreCase("big")) holdFmt = DB_fmtDateShrtBig;
-                    if (fmt.equalsIgnoreCase("sml")) holdFmt = DB_fmtDateShrtLittle;
-                    return holdFmt;
-                } catch (Exception ex) {
-                    ExpClass.Companion.logEX(ex, "Settings.getDateDisplayFormat-DATE_FMT_SHORT");
-                    return DB_fmtDateShrtMiddle;
-                }
-
+                return current.dateFmtShort;
             case DATE_TIME_FMT_SHORT:
-                try {
-                    holdFmt = DB_fmtDateShrtMiddle;
-                    if (fmt.equalsIgnoreCase("big")) holdFmt = DB_fmtDateShrtBig;
-                    if (fmt.equalsIgnoreCase("sml")) holdFmt = DB_fmtDateShrtLittle;
-                    holdFmt += " @ " + tmt;
-                    return holdFmt;
-                } catch (Exception ex) {
-                    ExpClass.Companion.logEX(ex, "Settings.getDateDisplayFormat-DATE_TIME_FMT_SHORT");
-                    return DB_fmtDateShrtMiddle + " @ " + DB_fmtDateTime;
-                }
+                return current.dateTimeFmtShort;
             case DATE_TIME_FMT_REV:
-                try{
-                    holdFmt = DB_fmtDateShrtMiddle;
-                    if (fmt.equalsIgnoreCase("big")) holdFmt = DB_fmtDateShrtBig;
-                    if (fmt.equalsIgnoreCase("sml")) holdFmt = DB_fmtDateShrtLittle;
-                    holdFmt = tmt + " on " + holdFmt;
-                    return holdFmt;
-                } catch (Exception ex) {
-                    ExpClass.Companion.logEX(ex, "Settings.getDateDisplayFormat-DATE_TIME_FMT_SHORT");
-                    return DB_fmtDateShrtMiddle + " @ " + DB_fmtDateTime;
-                }
+                return current.dateTimeFmtRev;
             default:
                 throw new IllegalArgumentException();
-
         }
     }
 }
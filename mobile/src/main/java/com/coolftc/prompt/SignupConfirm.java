@@ -20,6 +20,7 @@ import com.coolftc.prompt.source.RegisterRequest;
 import com.coolftc.prompt.source.RegisterResponse;
 import com.coolftc.prompt.source.VerifyRequest;
 import com.coolftc.prompt.source.VerifyResponse;
+import com.coolftc.prompt.utility.ApiClient;
 import com.coolftc.prompt.utility.Connection;
 import com.coolftc.prompt.utility.ExpClass;
 import com.coolftc.prompt.utility.WebServices;
@@ -33,7 +34,6 @@ import com.google.firebase.auth.GetTokenResult;
 import com.google.firebase.auth.PhoneAuthCredential;
 import com.google.firebase.auth.PhoneAuthOptions;
 import com.google.firebase.auth.PhoneAuthProvider;
-import com.google.gson.Gson;
 
 import java.util.concurrent.TimeUnit;
 
@@ -335,7 +335,7 @@ public class SignupConfirm extends AppCompatActivity {
 
             try (Connection net = new Connection(context)) {
                 if (net.isOnline()) {
-                    WebServices ws = new WebServices(new Gson());
+                    WebServices ws = ApiClient.getWeb();
                     VerifyRequest confirm = new VerifyRequest(
                             Long.parseLong(criteria[0]),
                             criteria[1],
@@ -407,7 +407,7 @@ public class SignupConfirm extends AppCompatActivity {
 
             try (Connection net = new Connection(context)) {
                 if (net.isOnline()) {
-                    WebServices ws = new WebServices(new Gson());
+                    WebServices ws = ApiClient.getWeb();
                     RegisterRequest data = new RegisterRequest(
                             acct.unique,
                             true,
@@ -17,10 +17,10 @@ import androidx.core.content.ContextCompat;
 
 import com.coolftc.prompt.source.RegisterRequest;
 import com.coolftc.prompt.source.RegisterResponse;
+import com.coolftc.prompt.utility.ApiClient;
 import com.coolftc.prompt.utility.Connection;
 import com.coolftc.prompt.utility.ExpClass;
 import com.coolftc.prompt.utility.WebServices;
-import com.google.gson.Gson;
 
 import java.util.TimeZone;
 
@@ -160,7 +160,7 @@ public class SignupEmail extends AppCompatActivity {
             Actor acct = new Actor(context);
             try (Connection net = new Connection(context)) {
                 if (net.isOnline()) {
-                    WebServices ws = new WebServices(new Gson());
+                    WebServices ws = ApiClient.getWeb();
                     acct.unique = criteria[0];
                     acct.timezone = TimeZone.getDefault().getID();
                     acct.display = criteria[1].length() > 0 ? criteria[1] : acct.unique;
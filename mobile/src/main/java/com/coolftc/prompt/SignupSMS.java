@@ -19,6 +19,7 @@ import com.coolftc.prompt.source.RegisterRequest;
 import com.coolftc.prompt.source.RegisterResponse;
 import com.coolftc.prompt.source.VerifyRequest;
 import com.coolftc.prompt.source.VerifyResponse;
+import com.coolftc.prompt.utility.ApiClient;
 import com.coolftc.prompt.utility.Connection;
 import com.coolftc.prompt.utility.ExpClass;
 import com.coolftc.prompt.utility.WebServices;
@@ -32,7 +33,6 @@ import com.google.firebase.auth.GetTokenResult;
 import com.google.firebase.auth.PhoneAuthCredential;
 import com.google.firebase.auth.PhoneAuthOptions;
 import com.google.firebase.auth.PhoneAuthProvider;
-import com.google.gson.Gson;
 import com.google.i18n.phonenumbers.NumberParseException;
 import com.google.i18n.phonenumbers.PhoneNumberUtil;
 import com.google.i18n.phonenumbers.Phonenumber;
@@ -323,7 +323,7 @@ public class SignupSMS extends AppCompatActivity {
             Actor acct = new Actor(context);
             try (Connection net = new Connection(context)) {
                 if (net.isOnline()) {
-                    WebServices ws = new WebServices(new Gson());
+                    WebServices ws = ApiClient.getWeb();
                     acct.unique = criteria[0];
                     acct.timezone = TimeZone.getDefault().getID();
                     acct.display = criteria[1].length() > 0 ? criteria[1] : acct.unique;
@@ -425,7 +425,7 @@ public class SignupSMS extends AppCompatActivity {
             Actor acct = new Actor(context);
             try (Connection net = new Connection(context)) {
                 if (net.isOnline()) {
-                    WebServices ws = new WebServices(new Gson());
+                    WebServices ws = ApiClient.getWeb();
                     acct.unique = criteria[0];
                     acct.timezone = TimeZone.getDefault().getID();
                     acct.display = criteria[1].length() > 0 ? criteria[1] : acct.unique;
@@ -267,7 +267,7 @@ public class Welcome extends AppCompatActivity {
      * This reads all the local friends/invites into an account list.
      */
     private void LoadFriends(Integer friendType){
-        FriendDB social = new FriendDB(this);  // Be sure to close this before leaving the thread.
+        FriendDB social = FriendDB.getInstance(this);
         List<Account> contacts = new ArrayList< >();
         String sortEnd = getString(R.string.zzzzz); // Used to sort numbers to end
         SQLiteDatabase db = social.getReadableDatabase();
@@ -304,7 +304,6 @@ public class Welcome extends AppCompatActivity {
             }
 
         } catch(Exception ex){ cursor.close(); ExpClass.Companion.logEX(ex, this.getClass().getName() + ".LoadFriends"); }
-        finally { social.close(); }
     }
 
     public void delimitClick(View view){
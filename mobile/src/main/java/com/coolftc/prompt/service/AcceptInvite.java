@@ -7,6 +7,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import com.coolftc.prompt.Account;
 import com.coolftc.prompt.utility.ExpClass;
+import com.coolftc.prompt.utility.Lanes;
 
 import static com.coolftc.prompt.utility.Constants.*;
 
@@ -45,8 +46,10 @@ public class AcceptInvite extends IntentService {
             // By sending an invitation back, the connection is consummated.  Mirrors are not handled in this service.
             String [] addresses = new String[1];
             addresses[0] = mAccount.unique;
+            // This is already off the main thread, so if the lane is full just do it here.
+            // The notification is gone, so there is no one to tell to try again.
             SendInviteThread smt = new SendInviteThread(getApplicationContext(), addresses, mAccount.display, false);
-            smt.start();
+            if (Lanes.submit(Lanes.Lane.NETWORK, smt) == null) smt.run();
 
         } catch (Exception ex) {
             ExpClass.Companion.logEX(ex, this.getClass().getName() + ".onHandleIntent");
@@ -5,20 +5,20 @@ import android.content.Intent;
 
 import com.coolftc.prompt.Account;
 import com.coolftc.prompt.Actor;
+import com.coolftc.prompt.utility.ApiClient;
 import com.coolftc.prompt.utility.Connection;
 import com.coolftc.prompt.utility.ExpClass;
 import com.coolftc.prompt.utility.WebServices;
-import com.google.gson.Gson;
 
 import static com.coolftc.prompt.utility.Constants.FTI_Invite_Del;
 import static com.coolftc.prompt.utility.Constants.SUB_ZZZ;
 
 /**
- *  This thread is used to:
+ *  This task (run on the NETWORK lane, see Lanes) is used to:
     a. Remove a friend relationship.
     b. Reject an invitation to connect.
  */
-public class CancelFriendThread extends Thread {
+public class CancelFriendThread implements Runnable {
     private final Context mContext;
 
     Account mFriend;
@@ -42,7 +42,7 @@ public class CancelFriendThread extends Thread {
                 // There is not currently any recourse if this fails, other than the user
                 // can just retry after seeing the connection still exists.
                 Actor sender = new Actor(mContext);
-                WebServices ws = new WebServices(new Gson());
+                WebServices ws = ApiClient.getWeb();
                 String realPath = ws.baseUrl(mContext) + FTI_Invite_Del.replace(SUB_ZZZ, sender.acctIdStr()) + mFriend.acctIdStr();
                 ws.callDeleteApi(realPath, sender.ticket);
             }
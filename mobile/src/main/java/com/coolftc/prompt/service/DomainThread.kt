@@ -5,23 +5,23 @@ import android.os.Message
 import android.os.Messenger
 import android.os.RemoteException
 import com.coolftc.prompt.source.BaseCamp
+import com.coolftc.prompt.utility.ApiClient
 import com.coolftc.prompt.utility.Connection
 import com.coolftc.prompt.utility.Constants.*
 import com.coolftc.prompt.utility.ExpClass
-import com.coolftc.prompt.utility.WebServices
-import com.google.gson.Gson
 
 /**
- *  This thread is used to acquire the domain needed to access the API.  The idea is
- *  that this approach allows the location of the API to change if needed.
+ *  This task (run on the NETWORK lane, see Lanes) is used to acquire the domain needed
+ *  to access the API.  The idea is that this approach allows the location of the API
+ *  to change if needed.
  */
-class DomainThread(private val Context: Context, private val Callback: Messenger? = null) : Thread() {
+class DomainThread(private val Context: Context, private val Callback: Messenger? = null) : Runnable {
 
     override fun run() {
         Connection(Context).use {
             if (it.isOnline()) {
                 try {
-                    val apiService = WebServices(Gson())
+                    val apiService = ApiClient.web
                     val baseURL = apiService.callGetApi(FTI_BASE_CAMP_URL, BaseCamp::class.java, "")
                     if (baseURL == null || baseURL.Host.isNullOrBlank()) throw ExpClass()
                     apiService.saveBaseURL(Context, baseURL.Host)
@@ -0,0 +1,385 @@
+package com.coolftc.prompt.service;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.coolftc.prompt.Actor;
+import com.coolftc.prompt.Settings;
+import com.coolftc.prompt.source.MessageDB;
+import com.coolftc.prompt.source.PromptRequest;
+import com.coolftc.prompt.source.PromptResponse;
+import com.coolftc.prompt.source.SnoozeRequest;
+import com.coolftc.prompt.utility.ApiClient;
+import com.coolftc.prompt.utility.Connection;
+import com.coolftc.prompt.utility.ExpClass;
+import com.coolftc.prompt.utility.Lanes;
+import com.coolftc.prompt.utility.NetworkMonitor;
+import com.coolftc.prompt.utility.WebServices;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.coolftc.prompt.utility.Constants.*;
+import static java.time.format.DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+
+/**
+ *  The Outbox sends the requests queued in the outbox table (see MessageDB) to the
+    server.  Sending, snoozing and cancelling a prompt all go through here, so they
+    are not lost if the network is down, or the server has a problem.
+    a. Requests are sent oldest first.  If one fails, the later requests for the same
+       prompt wait for it, so e.g. a cancel never goes before its send.  Requests for
+       other prompts carry on.
+    b. A failure that might clear up (no network, a timeout, a server error) is tried
+       again later, waiting twice as long each time, see Backoff().  Anything else (the
+       server said no) is recorded on the message and dropped.
+    c. When offline, nothing is tried.  Once the network comes back, everything waiting
+       is tried right away.
+
+ *  Call Drain() after queuing something.  The drain runs on the NETWORK lane (see Lanes),
+    and only one runs at a time, a call while one is running just makes it take another
+    pass.  The retries are timed by a Handler, which does not survive the process, but
+    the queue does, and Refresh drains it too.
+ */
+public class Outbox implements Runnable {
+    private static final AtomicBoolean sRunning = new AtomicBoolean(false);
+    private static final AtomicBoolean sAgain = new AtomicBoolean(false);
+    private static final Handler sTimer = new Handler(Looper.getMainLooper());
+    private static Connection.ConnectionStateListener sWatch;   // Held here so it is never collected.
+
+    private final Context mContext;
+
+    // A queued request, as read from the table.
+    private static class Request {
+        long id;
+        long messageId;
+        long serverId;
+        int action;
+        String body;
+        int tries;
+        long nextMSec;
+
+        // Requests for the same prompt share a key, see a. above.
+        long Key() { return messageId > 0 ? messageId : -serverId; }
+    }
+
+    private Outbox(Context application) {
+        mContext = application;
+    }
+
+    /*
+     *  Start sending whatever is in the outbox, if not already doing so.
+     */
+    public static void Drain(Context context) {
+        Context application = context.getApplicationContext();
+        Watch(application);
+        sAgain.set(true);
+        if (sRunning.compareAndSet(false, true)) {
+            if (Lanes.submit(Lanes.Lane.NETWORK, new Outbox(application)) == null) sRunning.set(false);
+        }
+    }
+
+    // Drain as soon as the network is back.
+    private static synchronized void Watch(Context application) {
+        if (sWatch != null) return;
+        NetworkMonitor.INSTANCE.start(application);
+        sWatch = isAvailable -> {
+            if (!isAvailable) return;
+            try {
+                MessageDB.getInstance(application).OutboxReady();
+            } catch (Exception ex) {
+                ExpClass.Companion.logEX(ex, Outbox.class.getName() + ".Watch");
+            }
+            Drain(application);
+        };
+        NetworkMonitor.INSTANCE.addListener(sWatch);
+    }
+
+    @Override
+    public void run() {
+        long wait = 0;
+        try {
+            MessageDB db = MessageDB.getInstance(mContext);
+            while (sAgain.getAndSet(false)) {
+                wait = DrainOnce(db);
+            }
+        } catch (Exception ex) {
+            ExpClass.Companion.logEX(ex, this.getClass().getName() + ".run");
+        } finally {
+            sRunning.set(false);
+        }
+
+        // Catch a Drain() that came in just as this one was finishing.
+        if (sAgain.get()) {
+            Drain(mContext);
+        } else if (wait > 0) {
+            sTimer.removeCallbacksAndMessages(null);
+            sTimer.postDelayed(() -> Drain(mContext), wait);
+        }
+    }
+
+    /*
+     *  One pass through the outbox.  Returns how long until the next waiting request
+     *  can be tried, or 0 if there is nothing to wait for.
+     */
+    private long DrainOnce(MessageDB db) {
+        Actor sender = new Actor(mContext);
+        if (sender.ticket.length() == 0 || !NetworkMonitor.INSTANCE.getOnline()) return 0;
+
+        WebServices ws = ApiClient.getWeb();
+        Set<Long> blocked = new HashSet<>();
+        boolean changed = false;
+        long wait = 0;
+        for (Request req : ReadAll(db)) {
+            if (blocked.contains(req.Key())) continue;
+            long now = System.currentTimeMillis();
+            if (req.nextMSec > now) {
+                blocked.add(req.Key());
+                wait = wait == 0 ? req.nextMSec - now : Math.min(wait, req.nextMSec - now);
+                continue;
+            }
+            try {
+                Perform(db, ws, sender, req);
+                changed = true;
+            } catch (ExpClass kx) {
+                ExpClass.Companion.logEXP(kx, this.getClass().getName() + ".DrainOnce");
+                if (Retryable(kx) && req.tries + 1 < OUTBOX_MAX_TRIES) {
+                    long delay = Backoff(req.tries + 1);
+                    db.OutboxRetry(req.id, req.tries + 1, now + delay);
+                    blocked.add(req.Key());
+                    wait = wait == 0 ? delay : Math.min(wait, delay);
+                } else {
+                    GiveUp(db, req, kx.getNumber() == ExpClass.HTTP_STATUS ? kx.getStatus() : NETWORK_DOWN);
+                    changed = true;
+                }
+                // No point going on, the network listener will start things up again.
+                if (!NetworkMonitor.INSTANCE.getOnline()) break;
+            } catch (Exception ex) {
+                // Something wrong with the request itself, trying again will not help.
+                ExpClass.Companion.logEX(ex, this.getClass().getName() + ".DrainOnce");
+                GiveUp(db, req, ExpClass.STATUS_CODE_UNKNOWN);
+                changed = true;
+            }
+        }
+
+        // Trigger the Refresh to update the Pending count.
+        if (changed) {
+            Intent intent = new Intent(mContext, Refresh.class);
+            mContext.startService(intent);
+        }
+        return wait;
+    }
+
+    private List<Request> ReadAll(MessageDB db) {
+        List<Request> requests = new ArrayList<>();
+        try (Cursor cursor = db.OutboxGet()) {
+            while (cursor.moveToNext()) {
+                Request req = new Request();
+                req.id = cursor.getLong(cursor.getColumnIndex(MessageDB.OUTBOX_ID));
+                req.messageId = cursor.getLong(cursor.getColumnIndex(MessageDB.OUTBOX_MESSAGE));
+                req.serverId = cursor.getLong(cursor.getColumnIndex(MessageDB.OUTBOX_SERVER));
+                req.action = cursor.getInt(cursor.getColumnIndex(MessageDB.OUTBOX_ACTION));
+                req.body = cursor.getString(cursor.getColumnIndex(MessageDB.OUTBOX_BODY));
+                req.tries = cursor.getInt(cursor.getColumnIndex(MessageDB.OUTBOX_TRIES));
+                req.nextMSec = cursor.getLong(cursor.getColumnIndex(MessageDB.OUTBOX_NEXT_MS));
+                requests.add(req);
+            }
+        }
+        return requests;
+    }
+
+    /*
+     *  Send the request to the server, then update the message and take the request
+     *  out of the outbox, together.  A call that goes through but returns nothing is
+     *  a failure, so it is handled (see GiveUp) like any other the server turned down.
+     */
+    private void Perform(MessageDB messageDB, WebServices ws, Actor sender, Request req) throws ExpClass {
+        String basePath = ws.baseUrl(mContext);
+        SQLiteDatabase db = messageDB.getWritableDatabase();
+        switch (req.action) {
+            case MessageDB.OUTBOX_SEND: {
+                PromptRequest message = ApiClient.getParser().fromJson(req.body, PromptRequest.class);
+                String realPath = basePath + FTI_Message.replace(SUB_ZZZ, sender.acctIdStr());
+                PromptResponse actual = ws.callPostApi(realPath, message, PromptResponse.class, sender.ticket);
+                if (actual == null) throw NoResponse("Perform.Send");
+                db.beginTransaction();
+                try {
+                    updSuccess(db, req.messageId, actual.getPromptTime(), actual.getPromptId());
+                    MessageDB.OutboxRemove(db, req.id);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                break;
+            }
+            case MessageDB.OUTBOX_SNOOZE: {
+                SnoozeRequest message = ApiClient.getParser().fromJson(req.body, SnoozeRequest.class);
+                message.setWhen(SnoozeTime(message.getWhen()));
+                String realPath = basePath + FTI_Message.replace(SUB_ZZZ, sender.acctIdStr());
+                PromptResponse actual = ws.callPutApi(realPath, message, PromptResponse.class, sender.ticket);
+                if (actual == null) throw NoResponse("Perform.Snooze");
+                db.beginTransaction();
+                try {
+                    updSnooze(db, req.serverId, actual.getPromptTime(), actual.getPromptId());
+                    MessageDB.OutboxRemove(db, req.id);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                break;
+            }
+            case MessageDB.OUTBOX_CANCEL:
+                Cancel(db, ws, basePath, sender, req);
+                break;
+            default:
+                MessageDB.OutboxRemove(db, req.id);
+        }
+    }
+
+    /*
+     *  Cancel a prompt.  The server id is read now, rather than when the cancel was
+     *  queued, since the send may have only just gone through.
+     *  For Recurring notes, remove from the server but always delete them locally.
+     *  It is possible to snooze a recurring message, so also try to delete that.
+     *  Otherwise, if the delivery time has passed there is nothing on the server to
+     *  delete.  If the server will not delete it, leave the record with the status.
+     */
+    private void Cancel(SQLiteDatabase db, WebServices ws, String basePath, Actor sender, Request req) throws ExpClass {
+        String delPath = basePath + FTI_Message_Del.replace(SUB_ZZZ, sender.acctIdStr());
+        long serverId = 0, snoozeId = 0, timeMSec = 0;
+        boolean recurring = false, processed = false;
+        String[] columns = {MessageDB.MESSAGE_SRVR_ID, MessageDB.MESSAGE_SNOOZE_ID, MessageDB.MESSAGE_R_UNIT,
+                            MessageDB.MESSAGE_PROCESSED, MessageDB.MESSAGE_TIME_MS};
+        try (Cursor cursor = db.query(MessageDB.MESSAGE_TABLE, columns, DB_Table_ID.replace(SUB_ZZZ, Long.toString(req.messageId)), null, null, null, null)) {
+            if (cursor.moveToFirst()) {
+                serverId = cursor.getLong(0);
+                snoozeId = cursor.getLong(1);
+                recurring = cursor.getInt(2) != RECUR_INVALID;
+                processed = cursor.getInt(3) == MessageDB.SQLITE_TRUE;
+                timeMSec = cursor.getLong(4);
+            }
+        }
+
+        boolean past = processed && timeMSec > 0 && timeMSec < System.currentTimeMillis();
+        try {
+            if (serverId > 0 && recurring) {
+                ws.callDeleteApi(delPath + serverId, sender.ticket);
+                if (snoozeId > 0) {
+                    try {
+                        ws.callDeleteApi(delPath + snoozeId, sender.ticket);
+                    } catch (ExpClass kx) {
+                        /* skip api failures and just delete locally. */
+                        ExpClass.Companion.logEXP(kx, this.getClass().getName() + ".Cancel");
+                    }
+                }
+            } else if (serverId > 0 && !past) {
+                ws.callDeleteApi(delPath + (snoozeId > 0 ? snoozeId : serverId), sender.ticket);
+            }
+        } catch (ExpClass kx) {
+            if (Retryable(kx) || !recurring) throw kx;
+            ExpClass.Companion.logEXP(kx, this.getClass().getName() + ".Cancel");
+        }
+
+        db.beginTransaction();
+        try {
+            db.delete(MessageDB.MESSAGE_TABLE, DB_Table_ID.replace(SUB_ZZZ, Long.toString(req.messageId)), null);
+            MessageDB.OutboxRemove(db, req.id);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /*
+     *  The request will not go through, so drop it.  A failed send or cancel is recorded
+     *  on the message, so the person can see it.  A failed snooze just means the prompt
+     *  is not repeated.
+     */
+    private void GiveUp(MessageDB messageDB, Request req, long status) {
+        SQLiteDatabase db = messageDB.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (req.action != MessageDB.OUTBOX_SNOOZE && req.messageId > 0) updFailure(db, req.messageId, status);
+            MessageDB.OutboxRemove(db, req.id);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // No network, timeouts, too busy and server errors may clear up on their own.
+    private static boolean Retryable(ExpClass kx) {
+        if (kx.getNumber() == ExpClass.NETWORK_EXP) return true;
+        if (kx.getNumber() != ExpClass.HTTP_STATUS) return false;
+        int status = kx.getStatus();
+        return status == NETWORK_DOWN || status == 408 || status == 429 || status >= ExpClass.STATUS_CODE_SERVER_ERR;
+    }
+
+    /*
+     *  The time a snooze was queued with is based on when the person asked for it (see
+     *  Snooze).  If the request waited so long that the time has passed, the snooze is
+     *  counted from now instead, since a snooze into the past would never come up.
+     */
+    private String SnoozeTime(String when) {
+        ZonedDateTime now = ZonedDateTime.now();
+        try {
+            if (when != null && ZonedDateTime.parse(when, ISO_OFFSET_DATE_TIME).isAfter(now)) return when;
+        } catch (DateTimeParseException ex) {
+            ExpClass.Companion.logEX(ex, this.getClass().getName() + ".SnoozeTime");
+        }
+        return now.plusMinutes(Settings.getSnooze(mContext)).format(ISO_OFFSET_DATE_TIME);
+    }
+
+    // An empty answer is not something trying again will fix.
+    private ExpClass NoResponse(String method) {
+        return new ExpClass(ExpClass.STATUS_CODE_UNKNOWN, "No response from the server", this.getClass().getName() + "." + method);
+    }
+
+    // The wait after the given number of failures, doubling each time up to a limit.
+    private static long Backoff(int tries) {
+        return Math.min(OUTBOX_RETRY_MAX, OUTBOX_RETRY_BASE << Math.min(tries - 1, 20));
+    }
+
+    // Change an existing record to hold the server time and id.  Mark as processed.
+    private void updSuccess(SQLiteDatabase db, long id, String timeExact, long serverId) {
+        ContentValues values = new ContentValues();
+        values.put(MessageDB.MESSAGE_TIME, timeExact);
+        values.put(MessageDB.MESSAGE_TIME_MS, MessageDB.EpochOf(timeExact));
+        values.put(MessageDB.MESSAGE_SRVR_ID, serverId);
+        values.put(MessageDB.MESSAGE_STATUS, 0);
+        values.put(MessageDB.MESSAGE_PROCESSED, MessageDB.SQLITE_TRUE);
+
+        String where = DB_Table_ID.replace(SUB_ZZZ, Long.toString(id));
+        db.update(MessageDB.MESSAGE_TABLE, values, where, null);
+    }
+
+    // Change an existing record to hold the snooze time and id.
+    private void updSnooze(SQLiteDatabase db, long serverId, String timeExact, long snoozeId) {
+        ContentValues values = new ContentValues();
+        values.put(MessageDB.MESSAGE_TIME, timeExact);
+        values.put(MessageDB.MESSAGE_TIME_MS, MessageDB.EpochOf(timeExact));
+        values.put(MessageDB.MESSAGE_SNOOZE_ID, snoozeId);
+
+        String where = DB_Table_ServerID.replace(SUB_ZZZ, Long.toString(serverId));
+        db.update(MessageDB.MESSAGE_TABLE, values, where, null);
+    }
+
+    // Change an existing record to reflect the request failed. Mark as processed.
+    private void updFailure(SQLiteDatabase db, long id, long status) {
+        ContentValues values = new ContentValues();
+        values.put(MessageDB.MESSAGE_STATUS, status);
+        values.put(MessageDB.MESSAGE_PROCESSED, MessageDB.SQLITE_TRUE);
+
+        String where = DB_Table_ID.replace(SUB_ZZZ, Long.toString(id));
+        db.update(MessageDB.MESSAGE_TABLE, values, where, null);
+    }
+}
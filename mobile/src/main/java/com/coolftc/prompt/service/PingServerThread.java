@@ -6,20 +6,20 @@ import android.os.Messenger;
 
 import com.coolftc.prompt.Actor;
 import com.coolftc.prompt.source.PingResponse;
+import com.coolftc.prompt.utility.ApiClient;
 import com.coolftc.prompt.utility.Connection;
 import com.coolftc.prompt.utility.ExpClass;
 import com.coolftc.prompt.utility.WebServices;
-import com.google.gson.Gson;
 
 import static com.coolftc.prompt.utility.Constants.*;
 import static com.coolftc.prompt.utility.ExpClass.STATUS_CODE_NETWORK_DOWN;
 
 /**
- *  This thread is used to:
+ *  This task (run on the NETWORK lane, see Lanes) is used to:
     a. Check if the server is reachable.
     b. See if the app should display ads.
  */
-public class PingServerThread extends Thread {
+public class PingServerThread implements Runnable {
     private final Context mContext;
     private final Messenger mMessage;
 
@@ -34,7 +34,7 @@ public class PingServerThread extends Thread {
             Actor user = new Actor(mContext);
             try (Connection net = new Connection(mContext)) {
                 if (net.isOnline()) {
-                    WebServices ws = new WebServices(new Gson());
+                    WebServices ws = ApiClient.getWeb();
                     // find the server and get proof
                     String realPath = ws.baseUrl(mContext) + FTI_Ping;
                     PingResponse response = ws.callGetApi(realPath, PingResponse.class, user.ticket);
@@ -1,7 +1,6 @@
 package com.coolftc.prompt.service;
 
 import android.app.IntentService;
-import android.content.ContentValues;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
@@ -15,23 +14,21 @@ import android.provider.ContactsContract;
 import androidx.core.content.ContextCompat;
 
 import static com.coolftc.prompt.utility.Constants.*;
-import static com.coolftc.prompt.utility.KTime.KT_fmtDate3339fk;
-import static com.coolftc.prompt.utility.KTime.UTC_TIMEZONE;
 
 import com.coolftc.prompt.Account;
 import com.coolftc.prompt.Actor;
 import com.coolftc.prompt.R;
 import com.coolftc.prompt.Settings;
 import com.coolftc.prompt.source.Invitations;
-import com.coolftc.prompt.source.InviteResponse;
+import com.coolftc.prompt.source.FriendSync;
+import com.coolftc.prompt.utility.ApiClient;
 import com.coolftc.prompt.utility.Connection;
 import com.coolftc.prompt.utility.ExpClass;
 import com.coolftc.prompt.source.FriendDB;
-import com.coolftc.prompt.utility.KTime;
 import com.coolftc.prompt.source.MessageDB;
+import com.coolftc.prompt.utility.Lanes;
 import com.coolftc.prompt.utility.WebServices;
 import com.google.firebase.messaging.FirebaseMessaging;
-import com.google.gson.Gson;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -42,8 +39,8 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 
 /**
  *  This service is used to update various local data with any changed server data.
@@ -90,11 +87,11 @@ public class Refresh extends IntentService {
             }
 
             // Check for domain updates once a day (at most).
-            WebServices ws = new WebServices(new Gson());
+            WebServices ws = ApiClient.getWeb();
             if(LocalDate.now().isAfter(ws.baseUrlAge(getApplicationContext()))) {
                 try {
                     DomainThread domainThread = new DomainThread(getApplicationContext(), null);
-                    domainThread.start();
+                    Lanes.submit(Lanes.Lane.NETWORK, domainThread);
                 } catch (Exception ex) {
                     ExpClass.Companion.logEX(ex, "API Error cannot find domain target.");
                 }
@@ -137,26 +134,40 @@ public class Refresh extends IntentService {
         // Check if the user is signed up yet.
         if (ghost.ticket.length() == 0 || ghost.acctId == 0) return;
 
+        // Send anything left in the outbox, e.g. from before the app was last closed.
+        Outbox.Drain(this);
+
         /*
          *  Sync the mSocial graph.  This will grab data off the server and then clean up
          *  the local database with any Deletes, Changes, Adds.  In that order.  For Adds,
          *  check if there is local contact information that can supplement the data.
+         *  The friend list is a conditional GET, if it has not changed the server just
+         *  says so and the reconciliation is skipped.
          */
         try (Connection net = new Connection(getApplicationContext())){
-            mSocial = new FriendDB(getApplicationContext());  // Be sure to close this before leaving the thread.
+            mSocial = FriendDB.getInstance(getApplicationContext());
             // Check that valid account and not updating too often.
             if (ghost.ticket.length() > 0 || LocalDateTime.now().isAfter(friendAge)) {
-                WebServices ws = new WebServices(new Gson());
+                WebServices ws = ApiClient.getWeb();
                 if (net.isOnline()) {
                     String realPath = ws.baseUrl(getApplicationContext()) + FTI_Friends.replace(SUB_ZZZ, ghost.acctIdStr());
-                    Invitations invites = ws.callGetApi(realPath, Invitations.class, ghost.ticket);
-                    if (invites != null && (invites.getFriends() == null || invites.getFriends().size() == 0))
-                        return; // There is always 1 friend (yourself), if not something is wrong.
+                    // A null means the list has not changed since the last sync.
+                    WebServices.Changed<Invitations> changed = ws.callGetApiIfChanged(getApplicationContext(), realPath, Invitations.class, ghost.ticket);
+                    Invitations invites = changed != null ? changed.getValue() : null;
                     mContactPermissionCheck = ContextCompat.checkSelfPermission(this, android.Manifest.permission.READ_CONTACTS);
                     Account[] inviteStore = queryFriends();
-                    CheckForDeletes(invites, inviteStore);
-                    CheckForUpdates(invites, inviteStore);
-                    CheckForAdditions(invites, inviteStore);
+                    if (invites == null && inviteStore.length == 0) {
+                        // The local copy is gone (e.g. the table was rebuilt), so get it all again.
+                        invites = ws.callGetApi(realPath, Invitations.class, ghost.ticket);
+                    }
+                    if (invites != null) {
+                        if (invites.getFriends() == null || invites.getFriends().size() == 0) {
+                            return; // There is always 1 friend (yourself), if not something is wrong.
+                        }
+                        SyncFriends(invites, inviteStore);
+                        // Only once the table matches the list can the next sync be skipped as unchanged.
+                        if (changed != null) ws.saveCached(getApplicationContext(), realPath, ghost.ticket, changed);
+                    }
                     UpdateContactInfo(inviteStore);
                     CheckForUserDate(ghost, inviteStore);
                     friendAge = LocalDateTime.now().plus(15, ChronoUnit.MINUTES);
@@ -166,8 +177,6 @@ public class Refresh extends IntentService {
             ExpClass.Companion.logEX(ex, this.getClass().getName() + ".onHandleIntentB");
             // If there is a date problem, update and see if it works next time.
             friendAge = LocalDateTime.now().plus(15, ChronoUnit.MINUTES);
-        } finally {
-            mSocial.close();
         }
 
         /*
@@ -176,7 +185,7 @@ public class Refresh extends IntentService {
          *  specific user data.
          */
         try {
-            mMessage = new MessageDB(getApplicationContext()); // Be sure to close this before leaving the thread.
+            mMessage = MessageDB.getInstance(getApplicationContext());
             if (ghost.ticket.length() > 0) {
                 int holdPend = getPendPromptCnt();
                 if (ghost.notesWaiting != holdPend){
@@ -188,131 +197,7 @@ public class Refresh extends IntentService {
             ExpClass.Companion.logEX(ex, this.getClass().getName() + ".onHandleIntentC");
             // If there is a date problem, update and see if it works next time.
             friendAge = LocalDateTime.now().plus(15, ChronoUnit.MINUTES);
-        } finally {
-            mMessage.close();
-        }
-    }
-
-    /*
-     *  The server side is authoritative, so check to see if any data has
-     *  been added, so it can also be stored locally.
-     *  Check each of the Invitations against all Accounts.
-     */
-    private void CheckForAdditions(Invitations server, Account[] local){
-        List<Account> toAdd = new ArrayList<>();
-
-        localLoop: for(InviteResponse invite : Objects.requireNonNull(server.getFriends())){
-            for(Account acct : local){
-                if(invite.getFriendId() == acct.acctId)
-                    continue localLoop;
-            }
-            toAdd.add(CopyInviteAcct(invite, true, false));
-        }
-        localLoop: for(InviteResponse invite : Objects.requireNonNull(server.getRsvps())){
-            for(Account acct : local){
-                if(invite.getFriendId() == acct.acctId)
-                    continue localLoop;
-            }
-            toAdd.add(CopyInviteAcct(invite, false, true));
         }
-        localLoop: for(InviteResponse invite : Objects.requireNonNull(server.getInvites())){
-            for(Account acct : local){
-                if(invite.getFriendId() == acct.acctId)
-                    continue localLoop;
-            }
-            toAdd.add(CopyInviteAcct(invite, false, false));
-        }
-        addFriends(toAdd);
-    }
-
-    // Copy server invite to build an account.
-    private Account CopyInviteAcct(InviteResponse invite, boolean confirm, boolean sent){
-        Account hold = new Account();
-        hold.acctId = invite.getFriendId();
-        hold.timezone = invite.getTimezone();
-        hold.sleepcycle = invite.getScycle();
-        hold.unique = invite.getFname();
-        hold.display = invite.getFdisplay();
-        hold.mirror = invite.getMirror();
-        hold.pending = sent;
-        hold.confirmed = confirm;
-        hold.isFriend = true;
-        return hold;
-    }
-
-    /*
-     *  The server side is authoritative, so check to see if any data has
-     *  gotten out of sync with the existing local data.  Since "pending"
-     *  should only change if confirmed changes, not need to check for it.
-     *  Check each Account against all Friends/RSVPs/Invitations.
-     */
-    private void CheckForUpdates(Invitations server, Account[] local) {
-        List<Account> toChg = new ArrayList<>();
-
-        // The localLoop will cut short the iterations by moving on when found
-        localLoop: for(Account acct : local){
-            for(InviteResponse invite : Objects.requireNonNull(server.getFriends())){
-                if(acct.acctId == invite.getFriendId()) {
-                    if (Objects.requireNonNull(invite.getFname()).equalsIgnoreCase(acct.unique) &&
-                        Objects.requireNonNull(invite.getTimezone()).equalsIgnoreCase(acct.timezone) &&
-                        invite.getScycle() == acct.sleepcycle &&
-                        Objects.requireNonNull(invite.getFdisplay()).equalsIgnoreCase(acct.display) &&
-                        invite.getMirror() == acct.mirror && acct.confirmed) {
-                        continue localLoop;
-                    }
-                    acct.unique = invite.getFname();
-                    acct.timezone = invite.getTimezone();
-                    acct.sleepcycle = invite.getScycle();
-                    acct.display = invite.getFdisplay();
-                    acct.mirror = invite.getMirror();
-                    acct.confirmed = true;
-                    acct.pending = false;
-                    acct.isFriend = true;
-                    toChg.add(acct);
-                }
-            }
-            for(InviteResponse invite : Objects.requireNonNull(server.getRsvps())){
-                if(acct.acctId == invite.getFriendId()) {
-                    if (Objects.requireNonNull(invite.getFname()).equalsIgnoreCase(acct.unique) &&
-                        Objects.requireNonNull(invite.getTimezone()).equalsIgnoreCase(acct.timezone) &&
-                        invite.getScycle() == acct.sleepcycle &&
-                        Objects.requireNonNull(invite.getFdisplay()).equalsIgnoreCase(acct.display) &&
-                        invite.getMirror() == acct.mirror && !acct.confirmed) {
-                        continue localLoop;
-                    }
-                    acct.unique = invite.getFname();
-                    acct.timezone = invite.getTimezone();
-                    acct.sleepcycle = invite.getScycle();
-                    acct.display = invite.getFdisplay();
-                    acct.mirror = invite.getMirror();
-                    acct.confirmed = false;
-                    acct.pending = true;
-                    acct.isFriend = true;
-                    toChg.add(acct);
-                }
-            }
-            for(InviteResponse invite : Objects.requireNonNull(server.getInvites())){
-                if(acct.acctId == invite.getFriendId()) {
-                    if (Objects.requireNonNull(invite.getFname()).equalsIgnoreCase(acct.unique) &&
-                        Objects.requireNonNull(invite.getTimezone()).equalsIgnoreCase(acct.timezone) &&
-                        invite.getScycle() == acct.sleepcycle &&
-                        Objects.requireNonNull(invite.getFdisplay()).equalsIgnoreCase(acct.display) &&
-                        invite.getMirror() == acct.mirror && !acct.confirmed) {
-                        continue localLoop;
-                    }
-                    acct.unique = invite.getFname();
-                    acct.timezone = invite.getTimezone();
-                    acct.sleepcycle = invite.getScycle();
-                    acct.display = invite.getFdisplay();
-                    acct.mirror = invite.getMirror();
-                    acct.confirmed = false;
-                    acct.pending = false;
-                    acct.isFriend = true;
-                    toChg.add(acct);
-                }
-            }
-        }
-        chgFriends(toChg);
     }
 
     /*
@@ -321,44 +206,29 @@ public class Refresh extends IntentService {
     private void CheckForUserDate(Actor user, Account[] local){
         for(Account acct : local){
             if(user.acctId == acct.acctId){
+                boolean changed = false;
                 if(!user.contactPic.equalsIgnoreCase(acct.contactPic)){
                     user.contactPic = acct.contactPic;
-                    user.SyncPrime(false, getApplicationContext());
+                    changed = true;
                 }
                 if(!user.contactName.equalsIgnoreCase(acct.contactName)){
                     user.contactName = acct.contactName;
-                    user.SyncPrime(false, getApplicationContext());
+                    changed = true;
                 }
+                if(changed) user.SyncPrime(false, getApplicationContext());
             }
         }
     }
 
     /*
-     *  The server side is authoritative, so any local records not in
-     *  the server list should be deleted.  If there are any deletes,
-     *  let the caller know (might want to refresh the display).
-     *  Check each Account against all Invitations.
+     *  The server side is authoritative, so any local records not in the
+     *  server list are deleted, any that have drifted are changed and any
+     *  new ones are added.  The comparison is done in a single pass, see
+     *  FriendSync, and the resulting changes written in one transaction.
      */
-    private void CheckForDeletes(Invitations server, Account[] local) {
-        List<String> toDel = new ArrayList<>();
-
-        // The localLoop will cut short the iterations by moving on when found
-        localLoop: for(Account acct : local){
-            for(InviteResponse invite : Objects.requireNonNull(server.getFriends())){
-                if(acct.acctId == invite.getFriendId())
-                    continue localLoop;
-            }
-            for(InviteResponse invite : Objects.requireNonNull(server.getRsvps())){
-                if(acct.acctId == invite.getFriendId())
-                    continue localLoop;
-            }
-            for(InviteResponse invite : Objects.requireNonNull(server.getInvites())){
-                if(acct.acctId == invite.getFriendId())
-                    continue localLoop;
-            }
-            toDel.add(acct.localId);
-        }
-        delFriends(toDel);
+    private void SyncFriends(Invitations server, Account[] local) {
+        FriendSync changes = FriendSync.Reconcile(server, local);
+        mSocial.SaveFriends(changes.toDel, changes.toChg, changes.toAdd);
     }
 
     /*
@@ -388,7 +258,7 @@ public class Refresh extends IntentService {
                     }
                 }
             }
-            chgFriends(toChg);
+            mSocial.SaveFriends(Collections.<String>emptyList(), toChg, Collections.<Account>emptyList());
         }
     }
 
@@ -471,72 +341,15 @@ public class Refresh extends IntentService {
         } catch(Exception ex){ cursor.close(); ExpClass.Companion.logEX(ex, this.getClass().getName() + ".queryFriends"); return new Account[0]; }
     }
 
-    // Add any new friends and invitations.
-    private void addFriends(List<Account> items) {
-        SQLiteDatabase db = mSocial.getWritableDatabase();
-
-        for(Account acct : items) {
-            ContentValues values = new ContentValues();
-            values.put(FriendDB.FRIEND_ACCT_ID, acct.acctId);
-            values.put(FriendDB.FRIEND_UNIQUE, acct.unique);
-            values.put(FriendDB.FRIEND_DISPLAY, acct.display);
-            values.put(FriendDB.FRIEND_TIMEZONE, acct.timezone);
-            values.put(FriendDB.FRIEND_SCYCLE, acct.sleepcycle);
-            values.put(FriendDB.FRIEND_CONTACT_ID, acct.contactId);
-            values.put(FriendDB.FRIEND_CONTACT_NAME, acct.contactName);
-            values.put(FriendDB.FRIEND_CONTACT_PIC, acct.contactPic);
-            values.put(FriendDB.FRIEND_MIRROR, acct.mirror);
-            values.put(FriendDB.FRIEND_PENDING, acct.pending);
-            values.put(FriendDB.FRIEND_CONFIRM, acct.confirmed);
-            db.insert(FriendDB.FRIEND_TABLE, null, values);
-        }
-    }
-
-    // Change any changes to the list of friends and invitations.
-    private void chgFriends(List<Account> items) {
-        SQLiteDatabase db = mSocial.getWritableDatabase();
-
-        for(Account acct : items){
-            ContentValues values = new ContentValues();
-            values.put(FriendDB.FRIEND_ACCT_ID, acct.acctId);
-            values.put(FriendDB.FRIEND_UNIQUE, acct.unique);
-            values.put(FriendDB.FRIEND_DISPLAY, acct.display);
-            values.put(FriendDB.FRIEND_TIMEZONE, acct.timezone);
-            values.put(FriendDB.FRIEND_SCYCLE, acct.sleepcycle);
-            values.put(FriendDB.FRIEND_CONTACT_ID, acct.contactId);
-            values.put(FriendDB.FRIEND_CONTACT_NAME, acct.contactName);
-            values.put(FriendDB.FRIEND_CONTACT_PIC, acct.contactPic);
-            values.put(FriendDB.FRIEND_MIRROR, acct.mirror);
-            values.put(FriendDB.FRIEND_PENDING, acct.pending);
-            values.put(FriendDB.FRIEND_CONFIRM, acct.confirmed);
-            String where = "_id = " + acct.localId;
-            String[] filler = {};
-            db.update(FriendDB.FRIEND_TABLE, values, where, filler);
-        }
-    }
-
-    // Delete any old friends or invitations that are no longer
-    private void delFriends(List<String> keys) {
-        SQLiteDatabase db = mSocial.getWritableDatabase();
-
-        for(String key : keys) {
-            String where = "_id = " + key;
-            String[] filler = {};
-            db.delete(FriendDB.FRIEND_TABLE, where, filler);
-        }
-    }
-
     /*
-     *  Get the count of messages of a certain age.  The messages are stored in the local
-     *  DB with a timestamp in UTC, so we just want to get what time it is now in the UTC
-     *  timezone.  SQLite stores dates as strings and this comparison seems to work. We
-     *  then can cache this value for later display to the user.
+     *  Get the count of messages of a certain age.  The delivery time is also stored in
+     *  the local DB as epoch milliseconds, which is indexed, so this is a range count
+     *  against the current time. We then can cache this value for later display to the user.
      */
     private int getPendPromptCnt() {
         SQLiteDatabase db = mMessage.getReadableDatabase();
-        String[] filler = {};
-        String holdNowUTC = KTime.ParseNow(KT_fmtDate3339fk, UTC_TIMEZONE).toString();
-        Cursor cursor = db.rawQuery(DB_PendingCnt.replace(SUB_ZZZ, holdNowUTC), filler);
+        String[] args = {Long.toString(System.currentTimeMillis())};
+        Cursor cursor = db.rawQuery(DB_PendingCnt, args);
         int count = 0;
         // If empty, cursor returns false.
         if(cursor.moveToFirst()) { count = cursor.getInt(0); }
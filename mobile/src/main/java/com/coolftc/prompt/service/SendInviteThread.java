@@ -6,65 +6,142 @@ import android.content.Intent;
 import com.coolftc.prompt.Actor;
 import com.coolftc.prompt.source.InviteRequest;
 import com.coolftc.prompt.source.InviteResponse;
-import com.coolftc.prompt.utility.Connection;
+import com.coolftc.prompt.utility.ApiClient;
 import com.coolftc.prompt.utility.ExpClass;
+import com.coolftc.prompt.utility.Lanes;
+import com.coolftc.prompt.utility.NetworkMonitor;
 import com.coolftc.prompt.utility.WebServices;
-import com.google.gson.Gson;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.coolftc.prompt.utility.Constants.FTI_Invite;
+import static com.coolftc.prompt.utility.Constants.INVITE_PARALLEL;
 import static com.coolftc.prompt.utility.Constants.SUB_ZZZ;
 
 /**
- *  This thread is used to send an invitation to each supplied address.  While the
-    web service will return results, it is better if those are just ignored here
-    and the Refresh service is allowed to update the local data.
+ *  This task (run on the NETWORK lane, see Lanes) is used to send an invitation to
+    each supplied address.  While the web service will return results, it is better
+    if those are just ignored here and the Refresh service is allowed to update the
+    local data.
+
+ *  The sender, ticket and invite path are looked up once, then the invites are sent
+    by up to INVITE_PARALLEL workers at the same time.  The workers take the next
+    address off the list until it is empty, so a long list does not fill up the lane.
+    The last worker to finish reports the results and starts a single Refresh.
+    The results are the HTTP status for each address (STATUS_CODE_NETWORK_DOWN if
+    the device was offline), passed to the InviteListener if one is supplied.
  */
-public class SendInviteThread extends Thread {
+public class SendInviteThread implements Runnable {
     private final Context mContext;
-    private final String [] mAddresses;
+    private final List<String> mAddresses = new ArrayList<>();
     private final String mDisplay;
     private final boolean mMirror;
+    private final InviteListener mListener;
+
+    // Shared by the workers.
+    private final Map<String, Integer> mResults = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final AtomicInteger mNext = new AtomicInteger();
+    private final AtomicInteger mWorking = new AtomicInteger();
+    private WebServices mWeb;
+    private String mPath;
+    private String mTicket;
+
+    public interface InviteListener {
+        void InvitesSent(Map<String, Integer> results);
+    }
 
     public SendInviteThread(Context activity, String [] addresses, String display, boolean mirror) {
-        mAddresses = addresses;
+        this(activity, addresses, display, mirror, null);
+    }
+
+    public SendInviteThread(Context activity, String [] addresses, String display, boolean mirror, InviteListener listener) {
+        // Skip any empty addresses
+        for (String address : addresses) {
+            if (address != null && address.length() > 0) mAddresses.add(address);
+        }
         mContext = activity;
         mMirror = mirror;
         mDisplay = display;
+        mListener = listener;
     }
 
     @Override
     public void run() {
         try {
-            // Skip any empty addresses
-            for (String address : mAddresses) {
-                if(address.length() > 0) {
-                    sendInvite(address, mDisplay, mMirror);
+            if (mAddresses.size() == 0) return;
+            Actor from = new Actor(mContext);
+            mWeb = ApiClient.getWeb();
+            mPath = mWeb.baseUrl(mContext) + FTI_Invite.replace(SUB_ZZZ, from.acctIdStr());
+            mTicket = from.ticket;
+
+            // This thread is one of the workers, the rest go on the lane.
+            int workers = Math.min(INVITE_PARALLEL, mAddresses.size());
+            mWorking.set(workers);
+            for (int i = 1; i < workers; ++i) {
+                if (Lanes.submit(Lanes.Lane.NETWORK, this::Work) == null) {
+                    mWorking.decrementAndGet();  // The lane is full, the others will pick up the slack.
+                }
+            }
+            Work();
+        } catch (Exception ex) {
+            ExpClass.Companion.logEX(ex, this.getClass().getName() + ".run");
+        }
+    }
+
+    /*
+     *  Send invites until there are no addresses left.  The last one out wraps up.
+     */
+    private void Work() {
+        try {
+            int next;
+            while ((next = mNext.getAndIncrement()) < mAddresses.size()) {
+                String address = mAddresses.get(next);
+                mResults.put(address, sendInvite(address));
+            }
+        } finally {
+            if (mWorking.decrementAndGet() == 0) Finish();
+        }
+    }
+
+    /*
+     *  Since this will change the data, refresh it.
+     */
+    private void Finish() {
+        try {
+            Map<String, Integer> results;
+            synchronized (mResults) { results = new LinkedHashMap<>(mResults); }
+            for (Map.Entry<String, Integer> result : results.entrySet()) {
+                if (result.getValue() != HttpURLConnection.HTTP_OK) {
+                    ExpClass.Companion.logINFO(this.getClass().getName(), "Invite to " + result.getKey() + " failed (" + result.getValue() + ")");
                 }
             }
+            if (mListener != null) mListener.InvitesSent(results);
 
-            // Since this will change the data, refresh it.
             Intent sIntent = new Intent(mContext, Refresh.class);
             mContext.startService(sIntent);
-
         } catch (Exception ex) {
-            ExpClass.Companion.logEX(ex, this.getClass().getName() + ".run");
+            ExpClass.Companion.logEX(ex, this.getClass().getName() + ".Finish");
         }
     }
 
     /*
-     *  Send a new invite to the server.
+     *  Send a new invite to the server.  Returns the HTTP status.
      */
-    private void sendInvite(String unique, String display, boolean mirror){
-        try (Connection net = new Connection(mContext)) {
-            if (net.isOnline()) {
-                Actor from = new Actor(mContext);
-                WebServices ws = new WebServices(new Gson());
-                InviteRequest invite = new InviteRequest(unique, display, "", mirror);
-                String realPath = ws.baseUrl(mContext) + FTI_Invite.replace(SUB_ZZZ, from.acctIdStr());
-                ws.callPostApi(realPath, invite, InviteResponse.class, from.ticket);
-            }
+    private int sendInvite(String unique){
+        if (!NetworkMonitor.INSTANCE.getOnline()) return ExpClass.STATUS_CODE_NETWORK_DOWN;
+        try {
+            InviteRequest invite = new InviteRequest(unique, mDisplay, "", mMirror);
+            mWeb.callPostApi(mPath, invite, InviteResponse.class, mTicket);
+            return HttpURLConnection.HTTP_OK;
         } catch (ExpClass kx) {
-            ExpClass.Companion.logEXP(kx, this.getClass().getName() + ".run");
+            ExpClass.Companion.logEXP(kx, this.getClass().getName() + ".sendInvite");
+            return kx.getStatus() != 0 ? kx.getStatus() : ExpClass.STATUS_CODE_UNKNOWN;
         }
     }
-}
\ No newline at end of file
+}
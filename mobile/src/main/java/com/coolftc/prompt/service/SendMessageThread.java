@@ -2,99 +2,123 @@ package com.coolftc.prompt.service;
 
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.Intent;
 import android.database.sqlite.SQLiteDatabase;
 
-import com.coolftc.prompt.Actor;
 import com.coolftc.prompt.source.PromptRequest;
-import com.coolftc.prompt.source.PromptResponse;
-import com.coolftc.prompt.utility.Connection;
+import com.coolftc.prompt.utility.ApiClient;
 import com.coolftc.prompt.utility.ExpClass;
 import com.coolftc.prompt.source.MessageDB;
 import com.coolftc.prompt.Reminder;
 import com.coolftc.prompt.utility.KTime;
-import com.coolftc.prompt.utility.WebServices;
-import com.google.gson.Gson;
 
-import static com.coolftc.prompt.utility.Constants.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
- *  This thread is used to:
+ *  This task (run on the DB lane, see Lanes) is used to:
         a. Save prompt to table with status = sending.
-        b. Send prompt to server with the web service.
-        c. Update status on table to sent or failed, along with key and specific time.
+        b. Queue the prompt for the server, in the same transaction.
+        c. Start the Outbox, which sends it and updates the status on the table to sent
+           or failed, along with key and specific time.  If the network is down, the
+           prompt waits in the outbox until it is back.
+
+ *  The same reminder can go to a group of people, by passing in one prompt per person
+    (Entry does this for a group picked in the ContactPicker).
+    All the rows (and their outbox entries) are added in one transaction, so either the
+    whole group is saved or none of it is.  The requests share a group id (see Queue()),
+    so the server can tell they belong together.  The Outbox then sends them one after
+    another on the same (kept alive) connection.
  */
-public class SendMessageThread extends Thread {
+public class SendMessageThread implements Runnable {
 
-    private final Reminder prompt;
+    private final List<Reminder> prompts;
     private MessageDB promptDb;
     private final Context context;
 
     public SendMessageThread(Context activity, Reminder msg) {
-        prompt = msg;
+        this(activity, Collections.singletonList(msg));
+    }
+
+    public SendMessageThread(Context activity, List<Reminder> msgs) {
+        prompts = new ArrayList<>(msgs);
         context = activity;
     }
 
     @Override
     public void run() {
         try {
-            promptDb = new MessageDB(context);  // Be sure to close this before leaving the thread.
-
-            // Create the record in the local db, but set to not processed.
-            long localId = addMessage(prompt, false);
+            promptDb = MessageDB.getInstance(context);
 
-            // Create the record on the server using the web service. Get the real time back.
+            // Create the records in the local db, but set to not processed, and queue them for the server.
+            SQLiteDatabase db = promptDb.getWritableDatabase();
+            db.beginTransaction();
             try {
-                PromptResponse actual = sendMessage(prompt);
-                updSuccess(localId, actual.getPromptTime(), actual.getPromptId());
-            } catch (ExpClass kx) {
-                updFailure(localId, kx.getStatus());
+                Queue(prompts, new Store() {
+                    @Override
+                    public long Add(Reminder prompt) { return addMessage(prompt, false); }
+
+                    @Override
+                    public void Send(long localId, PromptRequest request) {
+                        MessageDB.OutboxAdd(db, localId, 0, MessageDB.OUTBOX_SEND, ApiClient.getParser().toJson(request));
+                    }
+                });
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
 
-            // Trigger the Refresh to update the Pending count.
-            Intent intent = new Intent(context, Refresh.class);
-            context.startService(intent);
+            Outbox.Drain(context);
         } catch (Exception ex) {
             ExpClass.Companion.logEX(ex, this.getClass().getName() + ".run");
-        } finally {
-            promptDb.close();
         }
     }
 
+    // Where Queue() puts the prompts, the local table and the outbox.
+    interface Store {
+        long Add(Reminder prompt);
+        void Send(long localId, PromptRequest request);
+    }
+
     /*
-     *  Send a new prompt to the server. If things work out, the server returns
-     *  the actual time that the prompt will be generated.
+     *  Save each prompt and queue its request.  If any prompt cannot be saved, this
+     *  throws, so the caller's transaction keeps none of the group.
+     *  The group id is the local row id of the first prompt.  That id only means
+     *  something on this device, so the server has to take it together with the
+     *  sender's account, and only to tie together the prompts sent in one go.
      */
-    private PromptResponse sendMessage(Reminder msg) throws ExpClass {
-        try (Connection net = new Connection(context)) {
-            if (net.isOnline()) {
-                Actor from = new Actor(context);
-                WebServices ws = new WebServices(new Gson());
-                PromptRequest message = new PromptRequest(
-                        msg.targetTime,
-                        msg.target.timezone,
-                        msg.targetTimeNameId,
-                        msg.targetTimeAdjId,
-                        msg.target.sleepcycle,
-                        msg.target.acctId,
-                        msg.recurUnit,
-                        msg.recurPeriod,
-                        msg.recurEnd,
-                        msg.recurNumber,
-                        0,
-                        msg.message
-                );
-                String realPath = ws.baseUrl(context) + FTI_Message.replace(SUB_ZZZ, from.acctIdStr());
-                return ws.callPostApi(realPath, message, PromptResponse.class, from.ticket);
-            } else {
-                throw new ExpClass(99, this.getClass().getName() + ".sendMessage", "offline");
-            }
-        } catch (ExpClass kx) {
-            ExpClass.Companion.logEXP(kx, this.getClass().getName() + ".sendMessage");
-            throw kx;
+    static void Queue(List<Reminder> prompts, Store store) throws ExpClass {
+        int groupId = 0;
+        for (Reminder prompt : prompts) {
+            long localId = store.Add(prompt);
+            if (localId == -1) throw new ExpClass(ExpClass.FILE_ISSUES, SendMessageThread.class.getName() + ".Queue", "Prompt not saved", prompt.target.unique);
+            if (prompts.size() > 1 && groupId == 0) groupId = (int) localId;
+            store.Send(localId, makeRequest(prompt, groupId));
         }
     }
 
+    /*
+     *  The request that creates the prompt on the server.  If things work out, the
+     *  server returns the actual time that the prompt will be generated.  A group id
+     *  of zero means the prompt is not part of a group.
+     */
+    private static PromptRequest makeRequest(Reminder msg, int groupId) {
+        return new PromptRequest(
+                msg.targetTime,
+                msg.target.timezone,
+                msg.targetTimeNameId,
+                msg.targetTimeAdjId,
+                msg.target.sleepcycle,
+                msg.target.acctId,
+                msg.recurUnit,
+                msg.recurPeriod,
+                msg.recurEnd,
+                msg.recurNumber,
+                groupId,
+                msg.message
+        );
+    }
+
     // Add a new reminder to local DB.
     private long addMessage(Reminder msg, boolean processed) {
         SQLiteDatabase db = promptDb.getWritableDatabase();
@@ -119,33 +143,10 @@ public class SendMessageThread extends Thread {
         values.put(MessageDB.MESSAGE_SNOOZE_ID, 0);
         values.put(MessageDB.MESSAGE_CREATE, KTime.ParseNow(KTime.KT_fmtDate3339fk, KTime.UTC_TIMEZONE).toString());
         values.put(MessageDB.MESSAGE_PROCESSED, (processed?MessageDB.SQLITE_TRUE:MessageDB.SQLITE_FALSE));
+        values.put(MessageDB.MESSAGE_TIME_MS, MessageDB.EpochOf(msg.targetTime));
+        values.put(MessageDB.MESSAGE_CREATE_MS, System.currentTimeMillis());
 
         return db.insert(MessageDB.MESSAGE_TABLE, null, values);  // Returns -1 if there is an error.
     }
 
-    // Change an existing record to hold the server time and id.  Mark as processed.
-    private void updSuccess(long id, String timeExact, long serverId) {
-        SQLiteDatabase db = promptDb.getWritableDatabase();
-
-        ContentValues values = new ContentValues();
-        values.put(MessageDB.MESSAGE_TIME, timeExact);
-        values.put(MessageDB.MESSAGE_SRVR_ID, serverId);
-        values.put(MessageDB.MESSAGE_PROCESSED, MessageDB.SQLITE_TRUE);
-
-        String where = DB_Table_ID.replace(SUB_ZZZ, Long.toString(id));
-        db.update(MessageDB.MESSAGE_TABLE, values, where, null);
-    }
-
-    // Change an existing record to reflect message failed to send. Mark as processed.
-    private void updFailure(long id, long status) {
-        SQLiteDatabase db = promptDb.getWritableDatabase();
-
-        ContentValues values = new ContentValues();
-        values.put(MessageDB.MESSAGE_STATUS, status);
-        values.put(MessageDB.MESSAGE_PROCESSED, MessageDB.SQLITE_TRUE);
-
-        String where = DB_Table_ID.replace(SUB_ZZZ, Long.toString(id));
-        db.update(MessageDB.MESSAGE_TABLE, values, where, null);
-    }
-
 }
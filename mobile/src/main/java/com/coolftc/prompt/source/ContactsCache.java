@@ -0,0 +1,162 @@
+package com.coolftc.prompt.source;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+
+import com.coolftc.prompt.Account;
+import com.coolftc.prompt.R;
+import com.coolftc.prompt.utility.ExpClass;
+import com.coolftc.prompt.utility.Lanes;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.Phonenumber;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ *  The ContactsCache keeps the device contacts (each phone number and email address
+    as an Account) in memory for the whole process, so screens like the ContactPicker
+    do not have to scan the address book and parse every phone number each time they
+    redraw.  The list is read on the PREFETCH lane (see Lanes) the first time it is
+    asked for, then again only when the contacts provider reports a change.
+    The lists handed out are a snapshot and must not be changed, nor the Accounts in
+    them.  Until the first read finishes the lists are empty.  Listeners are told (on
+    the UI thread) each time a new snapshot is ready.
+    The caller is expected to have checked for the READ_CONTACTS permission.
+ */
+public class ContactsCache {
+
+    public interface Listener {
+        void ContactsChanged();
+    }
+
+    // The contacts, ordered by first name and by last name.
+    private static volatile List<Account> sByFirst = Collections.emptyList();
+    private static volatile List<Account> sByLast = Collections.emptyList();
+    private static volatile boolean sStale = true;
+    private static final AtomicBoolean sLoading = new AtomicBoolean(false);
+    private static final CopyOnWriteArrayList<Listener> sListeners = new CopyOnWriteArrayList<>();
+    private static final Handler sMain = new Handler(Looper.getMainLooper());
+    private static Context sContext;
+    private static ContentObserver sWatch;
+
+    private ContactsCache() {}
+
+    /*
+     *  The contacts as of the last read, sorted as asked.  If they are out of date (or
+     *  have not been read yet), a read is started, and the listeners told when done.
+     */
+    public static List<Account> Get(Context context, boolean byLastName) {
+        Start(context);
+        if (sStale) Load();
+        return byLastName ? sByLast : sByFirst;
+    }
+
+    public static void addListener(Listener listener) { sListeners.addIfAbsent(listener); }
+    public static void removeListener(Listener listener) { sListeners.remove(listener); }
+
+    // Watch the contacts provider, if not already.
+    private static synchronized void Start(Context context) {
+        if (sWatch != null) return;
+        sContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        sWatch = new ContentObserver(sMain) {
+            @Override
+            public void onChange(boolean selfChange) {
+                sStale = true;
+                Load();
+            }
+        };
+        try {
+            sContext.getContentResolver().registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, sWatch);
+        } catch (Exception ex) {
+            ExpClass.Companion.logEX(ex, ContactsCache.class.getName() + ".Start");
+        }
+    }
+
+    /*
+     *  Read the contacts, unless a read is already going.  If a change comes in while
+     *  reading, the stale flag is set again and another read follows this one.
+     */
+    private static void Load() {
+        if (!sLoading.compareAndSet(false, true)) return;
+        sStale = false;
+        Runnable work = () -> {
+            try {
+                List<Account> byFirst = Read(sContext);
+                List<Account> byLast = new ArrayList<>(byFirst);
+                Collections.sort(byLast, Account.ByLastFirstName);
+                sByFirst = Collections.unmodifiableList(byFirst);
+                sByLast = Collections.unmodifiableList(byLast);
+                sMain.post(() -> { for (Listener listener : sListeners) listener.ContactsChanged(); });
+            } catch (Exception ex) {
+                ExpClass.Companion.logEX(ex, ContactsCache.class.getName() + ".Load");
+            } finally {
+                sLoading.set(false);
+                if (sStale) Load();
+            }
+        };
+        if (Lanes.submit(Lanes.Lane.PREFETCH, work) == null) {
+            sStale = true;
+            sLoading.set(false);
+        }
+    }
+
+    /*
+     * This reads all the contacts with a phone number or email address from the data table.  For a good layout of the data see:
+     * http://androidexample.com/Get_Contact_Emails_By_Content_Provider_-_Android_Example/index.php?view=article_discription&aid=121
+     * The phone numbers get a little formatting help.  The list comes back sorted by first name.
+     */
+    private static List<Account> Read(Context context) {
+        List<Account> contacts = new ArrayList<>();
+        String sortEnd = context.getString(R.string.zzzzz);
+        String customType = context.getString(R.string.other);
+        String[] selection = {ContactsContract.Data.CONTACT_ID, ContactsContract.Data.DISPLAY_NAME_PRIMARY, ContactsContract.Contacts.Data.DATA1, ContactsContract.Data.MIMETYPE, ContactsContract.Contacts.PHOTO_THUMBNAIL_URI, ContactsContract.CommonDataKinds.Phone.TYPE};
+        try (Cursor contact = context.getContentResolver().query(
+                ContactsContract.Data.CONTENT_URI,
+                selection,
+                ContactsContract.Contacts.Data.MIMETYPE + "=? OR " + ContactsContract.Contacts.Data.MIMETYPE + "=?",
+                new String[]{ContactsContract.CommonDataKinds.Email.CONTENT_ITEM_TYPE, ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE},
+                ContactsContract.Data.DISPLAY_NAME_PRIMARY)) {
+
+            if (contact == null || contact.getCount() == 0) return contacts;
+            PhoneNumberUtil phoneHelper = PhoneNumberUtil.getInstance();
+            int idCol = contact.getColumnIndex(ContactsContract.Data.CONTACT_ID);
+            int nameCol = contact.getColumnIndex(ContactsContract.Data.DISPLAY_NAME_PRIMARY);
+            int mimeCol = contact.getColumnIndex(ContactsContract.Data.MIMETYPE);
+            int dataCol = contact.getColumnIndex(ContactsContract.Contacts.Data.DATA1);
+            int typeCol = contact.getColumnIndex(ContactsContract.CommonDataKinds.Phone.TYPE);
+            int picCol = contact.getColumnIndex(ContactsContract.Contacts.PHOTO_THUMBNAIL_URI);
+            while (contact.moveToNext()) {
+                try {
+                    Account holdAcct = new Account();
+                    holdAcct.contactId = Long.toString(contact.getLong(idCol));
+                    holdAcct.contactName = contact.getString(nameCol);
+                    holdAcct.contactSur = holdAcct.contactName.substring(holdAcct.contactName.lastIndexOf(" ")+1);
+                    if (holdAcct.contactSur.length() > 0 && Character.isDigit(holdAcct.contactSur.charAt(0))) holdAcct.contactSur = sortEnd; // sort these to the end
+                    String mimetype = contact.getString(mimeCol);
+                    holdAcct.unique = contact.getString(dataCol);
+                    if (mimetype.equalsIgnoreCase(ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE)) {
+                        Phonenumber.PhoneNumber fullNbr = phoneHelper.parse(holdAcct.unique, "US");
+                        String holdnbr = phoneHelper.format(fullNbr, PhoneNumberUtil.PhoneNumberFormat.E164);
+                        holdAcct.unique = holdnbr.replace("+", "");
+                        holdAcct.contactLabel = ContactsContract.CommonDataKinds.Phone.getTypeLabel(context.getResources(), Integer.parseInt(contact.getString(typeCol)), customType).toString();
+                    }
+                    holdAcct.contactPic = contact.getString(picCol);
+                    contacts.add(holdAcct);
+                } catch (Exception ex) {
+                    /* If a single contact has an issue, just move past it. Specifically, the phone
+                       number parser might barf if the user has some non-number in that field. We do
+                       not want to use it either in that case. */
+                }
+            }
+        }
+        return contacts;
+    }
+}
@@ -3,18 +3,23 @@ package com.coolftc.prompt.source;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
 
+import com.coolftc.prompt.Account;
+
+import java.util.List;
+
 /**
  *  This class allows access to the database & tables that hold the friend information.
     NOTE: There are 3 primary objects you will work with.  The FriendDB, Readable or
     Writable Databases and Cursors.
     Cursor   - Call close() as soon as possible (unless using a managed cursor, then never call close()).
-    Database - Never call close().  If using multiple FriendDB (SQLiteOpenHelper) across threads,
-                you may get "database is locked" exceptions on occasion.
-    FriendDB- Call close() as little as possible, but always before the context ends. Try to create
-                as few of these as possible. If you just have one, the "database is locked" problems
-                should be very rare.
+    Database - Never call close().
+    FriendDB- Use getInstance(), the one helper is shared by everything and is never
+                closed (close() does nothing).
+    Write-ahead logging is on, so the ContactPicker can read the friends while the
+    Refresh is syncing them.
 
  *  Note: Creating the FriendDB does not try to do a create/upgrade.  That only
     happens upon first read/write database call.  So having (at least the first)
@@ -50,14 +55,43 @@ public class FriendDB extends SQLiteOpenHelper {
     public static final int SQLITE_TRUE = 1;                    // Boolean is not supported in the
     public static final int SQLITE_FALSE = 0;                   // db, so we have to improvise.
 
-    public FriendDB(Context context) {
+    // Precompiled statements used by SaveFriends.  The column order is shared by the
+    // insert and update, so the same binding works for both (update adds the _id).
+    private static final String FRIEND_COLUMNS_SET =
+            FRIEND_ACCT_ID + " = ?, " + FRIEND_UNIQUE + " = ?, " + FRIEND_DISPLAY + " = ?, " +
+            FRIEND_TIMEZONE + " = ?, " + FRIEND_SCYCLE + " = ?, " + FRIEND_CONTACT_ID + " = ?, " +
+            FRIEND_CONTACT_NAME + " = ?, " + FRIEND_CONTACT_PIC + " = ?, " + FRIEND_MIRROR + " = ?, " +
+            FRIEND_PENDING + " = ?, " + FRIEND_CONFIRM + " = ?";
+    private static final String SQL_FRIEND_INSERT = "insert into " + FRIEND_TABLE + " (" +
+            FRIEND_ACCT_ID + TABLE_DELIMIT + FRIEND_UNIQUE + TABLE_DELIMIT + FRIEND_DISPLAY + TABLE_DELIMIT +
+            FRIEND_TIMEZONE + TABLE_DELIMIT + FRIEND_SCYCLE + TABLE_DELIMIT + FRIEND_CONTACT_ID + TABLE_DELIMIT +
+            FRIEND_CONTACT_NAME + TABLE_DELIMIT + FRIEND_CONTACT_PIC + TABLE_DELIMIT + FRIEND_MIRROR + TABLE_DELIMIT +
+            FRIEND_PENDING + TABLE_DELIMIT + FRIEND_CONFIRM + ") values (?,?,?,?,?,?,?,?,?,?,?)";
+    private static final String SQL_FRIEND_UPDATE = "update " + FRIEND_TABLE + " set " + FRIEND_COLUMNS_SET + " where " + FRIEND_ID + " = ?";
+    private static final String SQL_FRIEND_DELETE = "delete from " + FRIEND_TABLE + " where " + FRIEND_ID + " = ?";
+    private static final int FRIEND_COLUMNS_CNT = 11;
+
+    private static volatile FriendDB sInstance;
+
+    private FriendDB(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
     }
 
-    public FriendDB(Context context, SQLiteDatabase.CursorFactory cf) {
-        super(context, DATABASE_NAME, cf, DATABASE_VERSION);
+    // The shared helper.  It holds on to the application context, not the one passed in.
+    public static FriendDB getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (FriendDB.class) {
+                if (sInstance == null) sInstance = new FriendDB(context.getApplicationContext());
+            }
+        }
+        return sInstance;
     }
 
+    // The shared helper is never closed, see the class notes.
+    @Override
+    public synchronized void close() { }
+
     /* This method is called when a database is not found, so we create the tables here. */
     @Override
     public void onCreate(SQLiteDatabase db) {
@@ -91,5 +125,70 @@ public class FriendDB extends SQLiteOpenHelper {
         onCreate(db);
     }
 
+    /*
+     *  Write a set of friend changes, in the order deletes, changes, adds.  All the work
+     *  is done in one transaction using precompiled statements, so a large sync costs a
+     *  single journal commit rather than one per row.  If anything fails, nothing is
+     *  written and the exception is passed along to the caller.
+     */
+    public void SaveFriends(List<String> toDel, List<Account> toChg, List<Account> toAdd) {
+        if (toDel.isEmpty() && toChg.isEmpty() && toAdd.isEmpty()) return;
 
-}
\ No newline at end of file
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (!toDel.isEmpty()) {
+                SQLiteStatement delete = db.compileStatement(SQL_FRIEND_DELETE);
+                try {
+                    for (String key : toDel) {
+                        delete.bindString(1, key);
+                        delete.executeUpdateDelete();
+                    }
+                } finally { delete.close(); }
+            }
+            if (!toChg.isEmpty()) {
+                SQLiteStatement update = db.compileStatement(SQL_FRIEND_UPDATE);
+                try {
+                    for (Account acct : toChg) {
+                        bindFriend(update, acct);
+                        update.bindString(FRIEND_COLUMNS_CNT + 1, acct.localId);
+                        update.executeUpdateDelete();
+                    }
+                } finally { update.close(); }
+            }
+            if (!toAdd.isEmpty()) {
+                SQLiteStatement insert = db.compileStatement(SQL_FRIEND_INSERT);
+                try {
+                    for (Account acct : toAdd) {
+                        bindFriend(insert, acct);
+                        insert.executeInsert();
+                    }
+                } finally { insert.close(); }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Bind the account columns in the order used by the insert/update statements.
+    private void bindFriend(SQLiteStatement stmt, Account acct) {
+        stmt.clearBindings();
+        stmt.bindLong(1, acct.acctId);
+        bindText(stmt, 2, acct.unique);
+        bindText(stmt, 3, acct.display);
+        bindText(stmt, 4, acct.timezone);
+        stmt.bindLong(5, acct.sleepcycle);
+        bindText(stmt, 6, acct.contactId);
+        bindText(stmt, 7, acct.contactName);
+        bindText(stmt, 8, acct.contactPic);
+        stmt.bindLong(9, acct.mirror ? SQLITE_TRUE : SQLITE_FALSE);
+        stmt.bindLong(10, acct.pending ? SQLITE_TRUE : SQLITE_FALSE);
+        stmt.bindLong(11, acct.confirmed ? SQLITE_TRUE : SQLITE_FALSE);
+    }
+
+    // The statement will not take a null string, so bind it explicitly.
+    private void bindText(SQLiteStatement stmt, int index, String value) {
+        if (value == null) stmt.bindNull(index); else stmt.bindString(index, value);
+    }
+}
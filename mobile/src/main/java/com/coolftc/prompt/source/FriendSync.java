@@ -0,0 +1,118 @@
+package com.coolftc.prompt.source;
+
+import com.coolftc.prompt.Account;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ *  This class compares the friend graph on the server with the locally stored
+    friends and works out what needs to be deleted, changed or added locally.
+    The server side is authoritative.  Rather than scan every list for every
+    local account, both sides are indexed by the account id and then walked
+    once, so the cost grows with the size of the lists, not their product.
+
+ *  Note: Any local Account that needs to change is updated in place, so the
+    caller can keep using the same array afterwards (e.g. for contact lookups).
+ */
+public class FriendSync {
+    // The kind of relationship the server reports for an account.
+    private static final int KIND_FRIEND = 0;   // Confirmed friend.
+    private static final int KIND_RSVP = 1;     // Invitation sent by this user.
+    private static final int KIND_INVITE = 2;   // Invitation sent to this user.
+
+    public final List<String> toDel = new ArrayList<>();    // Local ids to remove.
+    public final List<Account> toChg = new ArrayList<>();   // Local accounts to rewrite.
+    public final List<Account> toAdd = new ArrayList<>();   // New accounts to insert.
+
+    // Holds the server entry and what list it came from.
+    private static class Entry {
+        final InviteResponse invite;
+        final int kind;
+        Entry(InviteResponse invite, int kind) { this.invite = invite; this.kind = kind; }
+    }
+
+    FriendSync() {}
+
+    /*
+     *  Build the change set.  If the server (wrongly) reports the same account
+     *  in more than one list, the friend entry is preferred over the rsvp, and
+     *  the rsvp over the invite.  The additions keep the server ordering, that
+     *  is, friends, then rsvps, then invites.
+     */
+    public static FriendSync Reconcile(Invitations server, Account[] local) {
+        FriendSync changes = new FriendSync();
+        Map<Long, Entry> remote = new LinkedHashMap<>();
+        IndexInvites(remote, Objects.requireNonNull(server.getFriends()), KIND_FRIEND);
+        IndexInvites(remote, Objects.requireNonNull(server.getRsvps()), KIND_RSVP);
+        IndexInvites(remote, Objects.requireNonNull(server.getInvites()), KIND_INVITE);
+
+        // Deletes and Changes, one look up per local account.
+        Set<Long> known = new HashSet<>(local.length * 2);
+        for (Account acct : local) {
+            known.add(acct.acctId);
+            Entry match = remote.get(acct.acctId);
+            if (match == null) {
+                changes.toDel.add(acct.localId);
+            } else if (!IsCurrent(match, acct)) {
+                CopyInvite(match, acct);
+                changes.toChg.add(acct);
+            }
+        }
+
+        // Additions, anything on the server not seen locally.
+        for (Map.Entry<Long, Entry> item : remote.entrySet()) {
+            if (known.contains(item.getKey())) continue;
+            Account hold = new Account();
+            CopyInvite(item.getValue(), hold);
+            changes.toAdd.add(hold);
+        }
+        return changes;
+    }
+
+    // Whether any changes were found.
+    public boolean isEmpty() {
+        return toDel.isEmpty() && toChg.isEmpty() && toAdd.isEmpty();
+    }
+
+    private static void IndexInvites(Map<Long, Entry> remote, List<InviteResponse> invites, int kind) {
+        for (InviteResponse invite : invites) {
+            if (invite == null || remote.containsKey(invite.getFriendId())) continue;
+            remote.put(invite.getFriendId(), new Entry(invite, kind));
+        }
+    }
+
+    /*
+     *  The local account is current if the server data matches and the
+     *  confirmation matches the list it came from.  Since "pending" should
+     *  only change if confirmed changes, no need to check for it.
+     */
+    private static boolean IsCurrent(Entry match, Account acct) {
+        InviteResponse invite = match.invite;
+        return Objects.requireNonNull(invite.getFname()).equalsIgnoreCase(acct.unique) &&
+               Objects.requireNonNull(invite.getTimezone()).equalsIgnoreCase(acct.timezone) &&
+               invite.getScycle() == acct.sleepcycle &&
+               Objects.requireNonNull(invite.getFdisplay()).equalsIgnoreCase(acct.display) &&
+               invite.getMirror() == acct.mirror &&
+               acct.confirmed == (match.kind == KIND_FRIEND);
+    }
+
+    // Copy server invite into the account.
+    private static void CopyInvite(Entry match, Account acct) {
+        InviteResponse invite = match.invite;
+        acct.acctId = invite.getFriendId();
+        acct.unique = invite.getFname();
+        acct.timezone = invite.getTimezone();
+        acct.sleepcycle = invite.getScycle();
+        acct.display = invite.getFdisplay();
+        acct.mirror = invite.getMirror();
+        acct.confirmed = match.kind == KIND_FRIEND;
+        acct.pending = match.kind == KIND_RSVP;
+        acct.isFriend = true;
+    }
+}
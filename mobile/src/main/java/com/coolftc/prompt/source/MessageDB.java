@@ -1,20 +1,30 @@
 package com.coolftc.prompt.source;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.provider.BaseColumns;
 
+import com.coolftc.prompt.utility.KTime;
+
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  *  This class allows access to the database & tables that hold the reminder information.
     NOTE: There are 3 primary objects you will work with.  The MessageDB, Readable or
     Writable Databases and Cursors.
     Cursor   - Call close() as soon as possible (unless using a managed cursor, then never call close()).
-    Database - Never call close().  If using multiple MessageDB (SQLiteOpenHelper) across threads,
-                you may get "database is locked" exceptions on occasion.
-    MessageDB- Call close() as little as possible, but always before the context ends. Try to create
-                as few of these as possible. If you just have one, the "database is locked" problems
-                should be very rare.
+    Database - Never call close().
+    MessageDB - Use getInstance(), there is just the one for the whole process, so the
+                "database is locked" problems of many helpers across threads do not come up.
+                It stays open for the life of the process, close() does nothing.
+    The database uses write-ahead logging, so reading (e.g. the History) does not wait
+    on a write in progress (e.g. the Refresh), and the reads do not hold up the writes.
 
  *  Note: Creating the MessageDB does not try to do a create/upgrade.  That only
     happens upon first read/write database call.  So having (at least the first)
@@ -23,7 +33,7 @@ import android.provider.BaseColumns;
 public class MessageDB extends SQLiteOpenHelper {
     // Database Info
     private static final String DATABASE_NAME = "message.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 4;   // v2 = epoch time columns, v3 = full text search, v4 = outbox
     // Status Table & Attributes
     public static final String MESSAGE_TABLE = "message";           // Table name.
     public static final String MESSAGE_ID = BaseColumns._ID;        // Table key.
@@ -46,6 +56,27 @@ public class MessageDB extends SQLiteOpenHelper {
     public static final String MESSAGE_SNOOZE_ID = "snoozeid";      // The new note id of the message on the server.
     public static final String MESSAGE_CREATE = "created";          // The timestamp of the record in this local database (in UTC).
     public static final String MESSAGE_PROCESSED = "processed";     // True = server has processed the request.  See status for how that went.
+    public static final String MESSAGE_TIME_MS = "timeexactms";     // The MESSAGE_TIME as epoch milliseconds, for sorting and ranges.
+    public static final String MESSAGE_CREATE_MS = "createdms";     // The MESSAGE_CREATE as epoch milliseconds, for sorting.
+    // Indexes
+    private static final String MESSAGE_TIME_NDX = "message_timeexactms_ndx";
+    private static final String MESSAGE_CREATE_NDX = "message_createdms_ndx";
+    // Full text search over the target name and message.  This is an FTS4 "external content"
+    // table, meaning the text is only stored in the message table, and the triggers keep the
+    // search index in step with it.
+    public static final String MESSAGE_FTS = "message_fts";
+    // Outbox Table & Attributes.  The requests waiting to go to the server, see the Outbox service.
+    public static final String OUTBOX_TABLE = "outbox";             // Table name.
+    public static final String OUTBOX_ID = BaseColumns._ID;         // Table key, also the order the requests are sent.
+    public static final String OUTBOX_MESSAGE = "messageid";        // Local id of the message, 0 if there is none (e.g. a snooze).
+    public static final String OUTBOX_SERVER = "serverid";          // Server id of the message when queued, 0 if not known yet.
+    public static final String OUTBOX_ACTION = "action";            // What to do, see the OUTBOX_SEND, etc.
+    public static final String OUTBOX_BODY = "body";                // The request data as JSON, if any.
+    public static final String OUTBOX_TRIES = "tries";              // The number of failed attempts so far.
+    public static final String OUTBOX_NEXT_MS = "nextms";           // Epoch milliseconds before which not to try again.
+    public static final int OUTBOX_SEND = 1;
+    public static final int OUTBOX_SNOOZE = 2;
+    public static final int OUTBOX_CANCEL = 3;
 
     // Extra helper data
     // see http://www.sqlite.org/datatype3.html for information about sqlite datatypes.
@@ -57,15 +88,32 @@ public class MessageDB extends SQLiteOpenHelper {
     private static final String TABLE_DELIMIT = ",";
     public static final int SQLITE_TRUE = 1;                    // Boolean is not supported in the
     public static final int SQLITE_FALSE = 0;                   // db, so we have to improvise.
+    // Paging orders, see GetPage().
+    public static final int PAGE_BY_DELIVERY = 0;               // Delivery time, newest first.
+    public static final int PAGE_BY_CREATE = 1;                 // Creation time, newest first.
+    public static final long PAGE_FIRST = Long.MAX_VALUE;       // Use as the key to start at the top.
+
+    private static volatile MessageDB sInstance;
 
-    public MessageDB(Context context) {
+    private MessageDB(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
     }
 
-    public MessageDB(Context context, SQLiteDatabase.CursorFactory cf) {
-        super(context, DATABASE_NAME, cf, DATABASE_VERSION);
+    // The shared helper.  It holds on to the application context, not the one passed in.
+    public static MessageDB getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (MessageDB.class) {
+                if (sInstance == null) sInstance = new MessageDB(context.getApplicationContext());
+            }
+        }
+        return sInstance;
     }
 
+    // The shared helper is never closed, see the class notes.
+    @Override
+    public synchronized void close() { }
+
     /* This method is called when a database is not found, so we create the tables here. */
     @Override
     public void onCreate(SQLiteDatabase db) {
@@ -90,24 +138,226 @@ public class MessageDB extends SQLiteOpenHelper {
                 MESSAGE_STATUS      + TABLE_TYPE_INT  + TABLE_DELIMIT +
                 MESSAGE_SNOOZE_ID   + TABLE_TYPE_INT + TABLE_DELIMIT +
                 MESSAGE_CREATE      + TABLE_TYPE_TEXT + TABLE_DELIMIT +
-                MESSAGE_PROCESSED   + TABLE_TYPE_BOOL + ");");
+                MESSAGE_PROCESSED   + TABLE_TYPE_BOOL + TABLE_DELIMIT +
+                MESSAGE_TIME_MS     + TABLE_TYPE_INT + " default 0" + TABLE_DELIMIT +
+                MESSAGE_CREATE_MS   + TABLE_TYPE_INT + " default 0" + ");");
+        CreateTimeIndexes(db);
+        CreateSearchIndex(db);
+        CreateOutbox(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         // When there is an older database found, this method is called on startup.
         // The version number presented is the basis for "older".
+        // NOTE: This data is not stored anywhere else, so upgrades must carry the
+        //       existing rows forward, never drop the table.  Each step builds on the
+        //       last, so a very old database walks through all of them in order.
+        //       The helper already wraps this call in a transaction.
+
+        // v2: Add the epoch time columns, fill them in from the text times, then index.
+        if (oldVersion < 2) {
+            db.execSQL("alter table " + MESSAGE_TABLE + " add column " + MESSAGE_TIME_MS + TABLE_TYPE_INT + " default 0");
+            db.execSQL("alter table " + MESSAGE_TABLE + " add column " + MESSAGE_CREATE_MS + TABLE_TYPE_INT + " default 0");
+            BackfillTimes(db);
+            CreateTimeIndexes(db);
+        }
+
+        // v3: Add the full text search table and fill it from the existing messages.
+        if (oldVersion < 3) {
+            CreateSearchIndex(db);
+            db.execSQL("insert into " + MESSAGE_FTS + "(" + MESSAGE_FTS + ") values('rebuild')");
+        }
+
+        // v4: Add the outbox.  It starts empty.
+        if (oldVersion < 4) {
+            CreateOutbox(db);
+        }
+    }
+
+    private void CreateOutbox(SQLiteDatabase db) {
+        db.execSQL("create table if not exists " + OUTBOX_TABLE + " (" +
+                OUTBOX_ID       + TABLE_TYPE_INT + " primary key autoincrement" + TABLE_DELIMIT +
+                OUTBOX_MESSAGE  + TABLE_TYPE_INT + " default 0" + TABLE_DELIMIT +
+                OUTBOX_SERVER   + TABLE_TYPE_INT + " default 0" + TABLE_DELIMIT +
+                OUTBOX_ACTION   + TABLE_TYPE_INT + TABLE_DELIMIT +
+                OUTBOX_BODY     + TABLE_TYPE_TEXT + TABLE_DELIMIT +
+                OUTBOX_TRIES    + TABLE_TYPE_INT + " default 0" + TABLE_DELIMIT +
+                OUTBOX_NEXT_MS  + TABLE_TYPE_INT + " default 0" + ");");
+    }
+
+    /*
+     *  The search table and the triggers to keep it current.  The search text is only
+     *  touched when the name or message changes, so the frequent status and time updates
+     *  do not cost anything extra.  The old entry has to be removed before the row changes,
+     *  since FTS uses the current row to know what to take out of the index.
+     */
+    private void CreateSearchIndex(SQLiteDatabase db) {
+        String columns = MESSAGE_NAME + TABLE_DELIMIT + " " + MESSAGE_MSG;
+        String remove = "delete from " + MESSAGE_FTS + " where docid = old." + MESSAGE_ID + "; end";
+        String add = "insert into " + MESSAGE_FTS + "(docid, " + columns + ") values (new." + MESSAGE_ID + ", new." + MESSAGE_NAME + ", new." + MESSAGE_MSG + "); end";
+        // The prefix option keeps extra index entries for short word starts, to speed up type ahead.
+        db.execSQL("create virtual table if not exists " + MESSAGE_FTS + " using fts4(content=\"" + MESSAGE_TABLE + "\", prefix=\"2,3\", " + columns + ")");
+        db.execSQL("create trigger if not exists " + MESSAGE_FTS + "_bu before update of " + columns + " on " + MESSAGE_TABLE + " begin " + remove);
+        db.execSQL("create trigger if not exists " + MESSAGE_FTS + "_bd before delete on " + MESSAGE_TABLE + " begin " + remove);
+        db.execSQL("create trigger if not exists " + MESSAGE_FTS + "_au after update of " + columns + " on " + MESSAGE_TABLE + " begin " + add);
+        db.execSQL("create trigger if not exists " + MESSAGE_FTS + "_ai after insert on " + MESSAGE_TABLE + " begin " + add);
+    }
+
+    private void CreateTimeIndexes(SQLiteDatabase db) {
+        db.execSQL("create index if not exists " + MESSAGE_TIME_NDX + " on " + MESSAGE_TABLE + " (" + MESSAGE_TIME_MS + ")");
+        db.execSQL("create index if not exists " + MESSAGE_CREATE_NDX + " on " + MESSAGE_TABLE + " (" + MESSAGE_CREATE_MS + ")");
+    }
+
+    /*
+     *  Convert the text times on every existing row to epoch milliseconds.  Only the
+     *  three needed columns are read and the update is a single precompiled statement.
+     */
+    private void BackfillTimes(SQLiteDatabase db) {
+        String[] columns = {MESSAGE_ID, MESSAGE_TIME, MESSAGE_CREATE};
+        SQLiteStatement update = db.compileStatement("update " + MESSAGE_TABLE + " set " +
+                MESSAGE_TIME_MS + " = ?, " + MESSAGE_CREATE_MS + " = ? where " + MESSAGE_ID + " = ?");
+        try (Cursor cursor = db.query(MESSAGE_TABLE, columns, null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                update.bindLong(1, EpochOf(cursor.getString(1)));
+                update.bindLong(2, EpochOf(cursor.getString(2)));
+                update.bindLong(3, cursor.getLong(0));
+                update.executeUpdateDelete();
+            }
+        } finally {
+            update.close();
+        }
+    }
+
+    /*
+     *  Keyset paging over the messages.  Rather than read the whole table, this reads the
+     *  "limit" rows that come after the last row already seen, as identified by its epoch
+     *  time (in the column the order uses, see PageTimeColumn) and local id.  To start at
+     *  the top, pass PAGE_FIRST for both.  Since the time index is used to find the starting
+     *  point, the cost of a page does not depend on how deep into the list it is.
+     *  For delivery order, only processed messages are paged, as those that are still
+     *  waiting on the server have no real time yet, see GetUnprocessed().
+     *  The search, if not empty, limits the rows to those with a target name or message
+     *  containing words that start with each of the search words, see AppendSearch().  The caller must close the Cursor.
+     */
+    public Cursor GetPage(int order, long afterTime, long afterId, int limit, String search) {
+        String time = PageTimeColumn(order);
+        StringBuilder where = new StringBuilder();
+        List<String> args = new ArrayList<>();
+        if (order == PAGE_BY_DELIVERY) {
+            where.append(MESSAGE_PROCESSED).append(" = ").append(SQLITE_TRUE).append(" and ");
+        }
+        where.append(time).append(" <= ? and (").append(time).append(" < ? or ").append(MESSAGE_ID).append(" < ?)");
+        args.add(Long.toString(afterTime));
+        args.add(Long.toString(afterTime));
+        args.add(Long.toString(afterId));
+        AppendSearch(where, args, search);
+
+        String orderBy = time + " desc, " + MESSAGE_ID + " desc";
+        return getReadableDatabase().query(MESSAGE_TABLE, null, where.toString(), args.toArray(new String[0]), null, null, orderBy, Integer.toString(limit));
+    }
+
+    /*
+     *  The messages the server has not yet processed.  There should only ever be a few of
+     *  these, so no paging.  In delivery order these sit above all the paged rows, so the
+     *  person can see what they entered is getting worked on.  The caller must close the Cursor.
+     */
+    public Cursor GetUnprocessed(String search) {
+        StringBuilder where = new StringBuilder();
+        List<String> args = new ArrayList<>();
+        where.append(MESSAGE_PROCESSED).append(" = ").append(SQLITE_FALSE);
+        AppendSearch(where, args, search);
+        return getReadableDatabase().query(MESSAGE_TABLE, null, where.toString(), args.toArray(new String[0]), null, null, MESSAGE_ID + " desc");
+    }
+
+    /*
+     *  Queue a request for the server.  Pass in the database, so this can be part of the
+     *  same transaction as the change to the message.  Returns -1 if there is an error.
+     */
+    public static long OutboxAdd(SQLiteDatabase db, long messageId, long serverId, int action, String body) {
+        ContentValues values = new ContentValues();
+        values.put(OUTBOX_MESSAGE, messageId);
+        values.put(OUTBOX_SERVER, serverId);
+        values.put(OUTBOX_ACTION, action);
+        values.put(OUTBOX_BODY, body);
+        return db.insert(OUTBOX_TABLE, null, values);
+    }
 
-        /* This upgrade will wipe all data.  Remove the tables.
-         * NOTE: If an upgrade is ever done, probably want to do something other
-         *       than drop table since this data is not stored anywhere else.
-         *       Until your know what the new table will look like, not much point
-         *      in doing anything.
-         */
-        db.execSQL("DROP TABLE IF EXISTS " + MESSAGE_TABLE);
+    // True if anything is queued for the message, e.g. a snooze still waiting to go.
+    public static boolean OutboxHas(SQLiteDatabase db, long messageId) {
+        return DatabaseUtils.queryNumEntries(db, OUTBOX_TABLE, OUTBOX_MESSAGE + " = " + messageId) > 0;
+    }
+
+    // Everything in the outbox, oldest first.  The caller must close the Cursor.
+    public Cursor OutboxGet() {
+        return getReadableDatabase().query(OUTBOX_TABLE, null, null, null, null, null, OUTBOX_ID);
+    }
+
+    // Record a failed attempt and when the next one can be made.
+    public void OutboxRetry(long id, int tries, long nextMSec) {
+        ContentValues values = new ContentValues();
+        values.put(OUTBOX_TRIES, tries);
+        values.put(OUTBOX_NEXT_MS, nextMSec);
+        getWritableDatabase().update(OUTBOX_TABLE, values, OUTBOX_ID + " = " + id, null);
+    }
 
-        // Recreates the database with a new version
-        onCreate(db);
+    // Let everything waiting be tried right away, e.g. when the network comes back.
+    public void OutboxReady() {
+        ContentValues values = new ContentValues();
+        values.put(OUTBOX_NEXT_MS, 0);
+        getWritableDatabase().update(OUTBOX_TABLE, values, OUTBOX_NEXT_MS + " > 0", null);
     }
 
+    public static void OutboxRemove(SQLiteDatabase db, long id) {
+        db.delete(OUTBOX_TABLE, OUTBOX_ID + " = " + id, null);
+    }
+
+    // The epoch time column that the paging order uses for its key.
+    public static String PageTimeColumn(int order) {
+        return order == PAGE_BY_CREATE ? MESSAGE_CREATE_MS : MESSAGE_TIME_MS;
+    }
+
+    /*
+     *  Limit to the rows the full text search finds.  Each word typed is matched as the
+     *  prefix of a word in the target name or message (case insensitive), and all the words
+     *  must be found.  So "din mo" finds "Dinner with Mom".  The search is broken into words
+     *  the same way the index is, so the punctuation and spacing is dropped.
+     */
+    private void AppendSearch(StringBuilder where, List<String> args, String search) {
+        String match = SearchTerms(search);
+        if (match.length() == 0) return;
+        where.append(" and ").append(MESSAGE_ID).append(" in (select docid from ").append(MESSAGE_FTS)
+             .append(" where ").append(MESSAGE_FTS).append(" match ?)");
+        args.add(match);
+    }
+
+    // Turn the search into FTS prefix terms, e.g. "Din, mo" => "din* mo*".
+    private static String SearchTerms(String search) {
+        if (search == null) return "";
+        StringBuilder terms = new StringBuilder();
+        int start = -1;
+        for (int i = 0; i <= search.length(); i++) {
+            // Like the FTS simple tokenizer, only ASCII letters and digits are word characters,
+            // and anything beyond ASCII is kept as part of a word.
+            char ch = i < search.length() ? search.charAt(i) : ' ';
+            boolean word = ch >= 128 || Character.isLetterOrDigit(ch);
+            if (word && start < 0) start = i;
+            if (!word && start >= 0) {
+                if (terms.length() > 0) terms.append(' ');
+                terms.append(search.substring(start, i).toLowerCase()).append('*');
+                start = -1;
+            }
+        }
+        return terms.toString();
+    }
+
+    /*
+     *  The times are stored as text in the KT_fmtDate3339fk format, this converts one
+     *  to epoch milliseconds for the companion column.  Anything missing or that cannot
+     *  be parsed (e.g. a reminder still waiting on the server for its time) is zero.
+     */
+    public static long EpochOf(String time) {
+        long msec = KTime.Parse3339(time);
+        return msec != KTime.KT_INVALID ? msec : 0;
+    }
 }
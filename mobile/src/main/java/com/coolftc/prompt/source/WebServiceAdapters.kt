@@ -0,0 +1,478 @@
+package com.coolftc.prompt.source
+
+import com.google.gson.GsonBuilder
+import com.google.gson.TypeAdapter
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.google.gson.stream.JsonWriter
+
+/**
+ * This file contains hand written Gson TypeAdapters for the models in WebServiceModels.kt.
+ * Without them Gson builds a reflective adapter for each class the first time it is seen
+ * (per Gson instance), and then reads and writes every field through reflection.  These
+ * just switch on the JSON names.  They follow the same rules as the reflective ones:
+ * unknown names are skipped, missing or null numbers and booleans are 0/false, and null
+ * values are not written.  If a field is added to a model, add it here too.
+ */
+object WebServiceAdapters {
+
+    // Add all the model adapters to the builder.
+    fun register(builder: GsonBuilder): GsonBuilder = builder
+        .registerTypeAdapter(BaseCamp::class.java, BaseCampAdapter.nullSafe())
+        .registerTypeAdapter(PingResponse::class.java, PingResponseAdapter.nullSafe())
+        .registerTypeAdapter(RegisterRequest::class.java, RegisterRequestAdapter.nullSafe())
+        .registerTypeAdapter(RegisterResponse::class.java, RegisterResponseAdapter.nullSafe())
+        .registerTypeAdapter(UserRequest::class.java, UserRequestAdapter.nullSafe())
+        .registerTypeAdapter(UserResponse::class.java, UserResponseAdapter.nullSafe())
+        .registerTypeAdapter(VerifyRequest::class.java, VerifyRequestAdapter.nullSafe())
+        .registerTypeAdapter(VerifyResponse::class.java, VerifyResponseAdapter.nullSafe())
+        .registerTypeAdapter(InviteRequest::class.java, InviteRequestAdapter.nullSafe())
+        .registerTypeAdapter(InviteResponse::class.java, InviteResponseAdapter.nullSafe())
+        .registerTypeAdapter(Invitations::class.java, InvitationsAdapter.nullSafe())
+        .registerTypeAdapter(PromptRequest::class.java, PromptRequestAdapter.nullSafe())
+        .registerTypeAdapter(PromptResponse::class.java, PromptResponseAdapter.nullSafe())
+        .registerTypeAdapter(SnoozeRequest::class.java, SnoozeRequestAdapter.nullSafe())
+
+    /*
+        Value helpers, these accept the same loose input the Gson built in adapters do,
+        e.g. numbers and booleans sent as strings.
+     */
+    private fun JsonReader.string(): String? {
+        if (peek() == JsonToken.NULL) { nextNull(); return null }
+        if (peek() == JsonToken.BOOLEAN) return nextBoolean().toString()
+        return nextString()
+    }
+
+    private fun JsonReader.long(): Long {
+        if (peek() == JsonToken.NULL) { nextNull(); return 0 }
+        return nextLong()
+    }
+
+    private fun JsonReader.int(): Int {
+        if (peek() == JsonToken.NULL) { nextNull(); return 0 }
+        return nextInt()
+    }
+
+    private fun JsonReader.bool(): Boolean {
+        return when (peek()) {
+            JsonToken.NULL -> { nextNull(); false }
+            JsonToken.STRING -> nextString().toBoolean()
+            else -> nextBoolean()
+        }
+    }
+
+    // Read each name/value of an object, the block returns false for names it does not use.
+    private inline fun JsonReader.fields(block: (String) -> Boolean) {
+        beginObject()
+        while (hasNext()) {
+            if (!block(nextName())) skipValue()
+        }
+        endObject()
+    }
+
+    private fun JsonWriter.text(name: String, value: String?) { if (value != null) name(name).value(value) }
+
+    private fun <T> JsonReader.list(item: TypeAdapter<T>): List<T?>? {
+        if (peek() == JsonToken.NULL) { nextNull(); return null }
+        val items = ArrayList<T?>()
+        beginArray()
+        while (hasNext()) items.add(item.read(this))
+        endArray()
+        return items
+    }
+
+    private fun <T> JsonWriter.list(name: String, item: TypeAdapter<T>, values: List<T?>?) {
+        if (values == null) return
+        name(name).beginArray()
+        for (value in values) item.write(this, value)
+        endArray()
+    }
+
+    private object BaseCampAdapter : TypeAdapter<BaseCamp>() {
+        override fun write(out: JsonWriter, value: BaseCamp) {
+            out.beginObject()
+            out.text("Host", value.Host)
+            out.text("Path", value.Path)
+            out.text("Parameter", value.Parameter)
+            out.text("Auth", value.Auth)
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): BaseCamp {
+            var host: String? = null; var path: String? = null; var parameter: String? = null; var auth: String? = null
+            input.fields { name ->
+                when (name) {
+                    "Host" -> host = input.string()
+                    "Path" -> path = input.string()
+                    "Parameter" -> parameter = input.string()
+                    "Auth" -> auth = input.string()
+                    else -> return@fields false
+                }
+                true
+            }
+            return BaseCamp(host, path, parameter, auth)
+        }
+    }
+
+    private object PingResponseAdapter : TypeAdapter<PingResponse>() {
+        override fun write(out: JsonWriter, value: PingResponse) {
+            out.beginObject()
+            out.text("version", value.version)
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): PingResponse {
+            var version: String? = null
+            input.fields { name ->
+                when (name) {
+                    "version" -> version = input.string()
+                    else -> return@fields false
+                }
+                true
+            }
+            return PingResponse(version)
+        }
+    }
+
+    private object RegisterRequestAdapter : TypeAdapter<RegisterRequest>() {
+        override fun write(out: JsonWriter, value: RegisterRequest) {
+            out.beginObject()
+            out.text("uname", value.uname)
+            out.name("verify").value(value.verify)
+            out.text("timezone", value.timezone)
+            out.text("dname", value.dname)
+            out.name("scycle").value(value.scycle.toLong())
+            out.text("cname", value.cname)
+            out.text("device", value.device)
+            out.text("target", value.target)
+            out.name("type").value(value.type.toLong())
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): RegisterRequest {
+            val value = RegisterRequest(null, false, null, null, 0, null, null, null, 0)
+            input.fields { name ->
+                when (name) {
+                    "uname" -> value.uname = input.string()
+                    "verify" -> value.verify = input.bool()
+                    "timezone" -> value.timezone = input.string()
+                    "dname" -> value.dname = input.string()
+                    "scycle" -> value.scycle = input.int()
+                    "cname" -> value.cname = input.string()
+                    "device" -> value.device = input.string()
+                    "target" -> value.target = input.string()
+                    "type" -> value.type = input.int()
+                    else -> return@fields false
+                }
+                true
+            }
+            return value
+        }
+    }
+
+    private object RegisterResponseAdapter : TypeAdapter<RegisterResponse>() {
+        override fun write(out: JsonWriter, value: RegisterResponse) {
+            out.beginObject()
+            out.name("id").value(value.id)
+            out.text("ticket", value.ticket)
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): RegisterResponse {
+            val value = RegisterResponse(0, null)
+            input.fields { name ->
+                when (name) {
+                    "id" -> value.id = input.long()
+                    "ticket" -> value.ticket = input.string()
+                    else -> return@fields false
+                }
+                true
+            }
+            return value
+        }
+    }
+
+    private object UserRequestAdapter : TypeAdapter<UserRequest>() {
+        override fun write(out: JsonWriter, value: UserRequest) {
+            out.beginObject()
+            out.text("timezone", value.timezone)
+            out.text("dname", value.dname)
+            out.name("scycle").value(value.scycle.toLong())
+            out.text("target", value.target)
+            out.name("type").value(value.type.toLong())
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): UserRequest {
+            val value = UserRequest(null, null, 0, null, 0)
+            input.fields { name ->
+                when (name) {
+                    "timezone" -> value.timezone = input.string()
+                    "dname" -> value.dname = input.string()
+                    "scycle" -> value.scycle = input.int()
+                    "target" -> value.target = input.string()
+                    "type" -> value.type = input.int()
+                    else -> return@fields false
+                }
+                true
+            }
+            return value
+        }
+    }
+
+    private object UserResponseAdapter : TypeAdapter<UserResponse>() {
+        override fun write(out: JsonWriter, value: UserResponse) {
+            out.beginObject()
+            out.text("dname", value.dname)
+            out.name("scycle").value(value.scycle.toLong())
+            out.text("timezone", value.timezone)
+            out.text("cname", value.cname)
+            out.text("uname", value.uname)
+            out.name("verified").value(value.verified)
+            out.name("ads").value(value.ads)
+            out.name("broadcast").value(value.broadcast)
+            out.text("created", value.created)
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): UserResponse {
+            val value = UserResponse(null, 0, null, null, null, false, false, false, null)
+            input.fields { name ->
+                when (name) {
+                    "dname" -> value.dname = input.string()
+                    "scycle" -> value.scycle = input.int()
+                    "timezone" -> value.timezone = input.string()
+                    "cname" -> value.cname = input.string()
+                    "uname" -> value.uname = input.string()
+                    "verified" -> value.verified = input.bool()
+                    "ads" -> value.ads = input.bool()
+                    "broadcast" -> value.broadcast = input.bool()
+                    "created" -> value.created = input.string()
+                    else -> return@fields false
+                }
+                true
+            }
+            return value
+        }
+    }
+
+    private object VerifyRequestAdapter : TypeAdapter<VerifyRequest>() {
+        override fun write(out: JsonWriter, value: VerifyRequest) {
+            out.beginObject()
+            out.name("code").value(value.code)
+            out.text("provider", value.provider)
+            out.text("credential", value.credential)
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): VerifyRequest {
+            val value = VerifyRequest(0, null, null)
+            input.fields { name ->
+                when (name) {
+                    "code" -> value.code = input.long()
+                    "provider" -> value.provider = input.string()
+                    "credential" -> value.credential = input.string()
+                    else -> return@fields false
+                }
+                true
+            }
+            return value
+        }
+    }
+
+    private object VerifyResponseAdapter : TypeAdapter<VerifyResponse>() {
+        override fun write(out: JsonWriter, value: VerifyResponse) {
+            out.beginObject()
+            out.name("verified").value(value.verified)
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): VerifyResponse {
+            val value = VerifyResponse(false)
+            input.fields { name ->
+                when (name) {
+                    "verified" -> value.verified = input.bool()
+                    else -> return@fields false
+                }
+                true
+            }
+            return value
+        }
+    }
+
+    private object InviteRequestAdapter : TypeAdapter<InviteRequest>() {
+        override fun write(out: JsonWriter, value: InviteRequest) {
+            out.beginObject()
+            out.text("fname", value.fname)
+            out.text("fdisplay", value.fdisplay)
+            out.text("message", value.message)
+            out.name("mirror").value(value.mirror)
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): InviteRequest {
+            val value = InviteRequest(null, null, null, false)
+            input.fields { name ->
+                when (name) {
+                    "fname" -> value.fname = input.string()
+                    "fdisplay" -> value.fdisplay = input.string()
+                    "message" -> value.message = input.string()
+                    "mirror" -> value.mirror = input.bool()
+                    else -> return@fields false
+                }
+                true
+            }
+            return value
+        }
+    }
+
+    private object InviteResponseAdapter : TypeAdapter<InviteResponse>() {
+        override fun write(out: JsonWriter, value: InviteResponse) {
+            out.beginObject()
+            out.text("fname", value.fname)
+            out.name("friendId").value(value.friendId)
+            out.text("fdisplay", value.fdisplay)
+            out.name("scycle").value(value.scycle.toLong())
+            out.text("timezone", value.timezone)
+            out.name("mirror").value(value.mirror)
+            out.name("complete").value(value.complete)
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): InviteResponse {
+            val value = InviteResponse(null, 0, null, 0, null, false, false)
+            input.fields { name ->
+                when (name) {
+                    "fname" -> value.fname = input.string()
+                    "friendId" -> value.friendId = input.long()
+                    "fdisplay" -> value.fdisplay = input.string()
+                    "scycle" -> value.scycle = input.int()
+                    "timezone" -> value.timezone = input.string()
+                    "mirror" -> value.mirror = input.bool()
+                    "complete" -> value.complete = input.bool()
+                    else -> return@fields false
+                }
+                true
+            }
+            return value
+        }
+    }
+
+    private object InvitationsAdapter : TypeAdapter<Invitations>() {
+        private val item = InviteResponseAdapter.nullSafe()
+
+        override fun write(out: JsonWriter, value: Invitations) {
+            out.beginObject()
+            out.list("friends", item, value.friends)
+            out.list("rsvps", item, value.rsvps)
+            out.list("invites", item, value.invites)
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): Invitations {
+            val value = Invitations(null, null, null)
+            input.fields { name ->
+                when (name) {
+                    "friends" -> value.friends = input.list(item)
+                    "rsvps" -> value.rsvps = input.list(item)
+                    "invites" -> value.invites = input.list(item)
+                    else -> return@fields false
+                }
+                true
+            }
+            return value
+        }
+    }
+
+    private object PromptRequestAdapter : TypeAdapter<PromptRequest>() {
+        override fun write(out: JsonWriter, value: PromptRequest) {
+            out.beginObject()
+            out.text("when", value.`when`)
+            out.text("timezone", value.timezone)
+            out.name("timename").value(value.timename.toLong())
+            out.name("timeadj").value(value.timeadj.toLong())
+            out.name("scycle").value(value.scycle.toLong())
+            out.name("receiveId").value(value.receiveId)
+            out.name("units").value(value.units.toLong())
+            out.name("period").value(value.period.toLong())
+            out.text("end", value.end)
+            out.name("recurs").value(value.recurs.toLong())
+            out.name("groupId").value(value.groupId.toLong())
+            out.text("message", value.message)
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): PromptRequest {
+            val value = PromptRequest(null, null, 0, 0, 0, 0, 0, 0, null, 0, 0, null)
+            input.fields { name ->
+                when (name) {
+                    "when" -> value.`when` = input.string()
+                    "timezone" -> value.timezone = input.string()
+                    "timename" -> value.timename = input.int()
+                    "timeadj" -> value.timeadj = input.int()
+                    "scycle" -> value.scycle = input.int()
+                    "receiveId" -> value.receiveId = input.long()
+                    "units" -> value.units = input.int()
+                    "period" -> value.period = input.int()
+                    "end" -> value.end = input.string()
+                    "recurs" -> value.recurs = input.int()
+                    "groupId" -> value.groupId = input.int()
+                    "message" -> value.message = input.string()
+                    else -> return@fields false
+                }
+                true
+            }
+            return value
+        }
+    }
+
+    private object PromptResponseAdapter : TypeAdapter<PromptResponse>() {
+        override fun write(out: JsonWriter, value: PromptResponse) {
+            out.beginObject()
+            out.name("promptId").value(value.promptId)
+            out.text("promptTime", value.promptTime)
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): PromptResponse {
+            val value = PromptResponse(0, null)
+            input.fields { name ->
+                when (name) {
+                    "promptId" -> value.promptId = input.long()
+                    "promptTime" -> value.promptTime = input.string()
+                    else -> return@fields false
+                }
+                true
+            }
+            return value
+        }
+    }
+
+    private object SnoozeRequestAdapter : TypeAdapter<SnoozeRequest>() {
+        override fun write(out: JsonWriter, value: SnoozeRequest) {
+            out.beginObject()
+            out.text("when", value.`when`)
+            out.text("timezone", value.timezone)
+            out.name("snoozeId").value(value.snoozeId)
+            out.name("senderId").value(value.senderId)
+            out.text("message", value.message)
+            out.endObject()
+        }
+
+        override fun read(input: JsonReader): SnoozeRequest {
+            val value = SnoozeRequest(null, null, 0, 0, null)
+            input.fields { name ->
+                when (name) {
+                    "when" -> value.`when` = input.string()
+                    "timezone" -> value.timezone = input.string()
+                    "snoozeId" -> value.snoozeId = input.long()
+                    "senderId" -> value.senderId = input.long()
+                    "message" -> value.message = input.string()
+                    else -> return@fields false
+                }
+                true
+            }
+            return value
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.coolftc.prompt.utility
+
+import com.coolftc.prompt.source.WebServiceAdapters
+import com.google.gson.Gson
+import com.google.gson.GsonBuilder
+
+/**
+ *  The ApiClient holds the one Gson and WebServices used by the whole app.  A Gson
+ *  keeps a cache of the type adapters it has built, so creating one per call meant
+ *  every call paid to build them again (by reflection) for each model class.  This
+ *  Gson also has hand written adapters for the API models (see WebServiceAdapters),
+ *  so they need no reflection at all.  Both are thread safe, and are only created
+ *  the first time they are used.
+ *
+ *  Usage, from Java: WebServices ws = ApiClient.getWeb();
+ */
+object ApiClient {
+    @JvmStatic
+    val parser: Gson by lazy { WebServiceAdapters.register(GsonBuilder()).create() }
+
+    @JvmStatic
+    val web: WebServices by lazy { WebServices(parser) }
+}
@@ -1,14 +1,10 @@
 package com.coolftc.prompt.utility
 
-import android.content.BroadcastReceiver
 import android.content.Context
-import android.content.Intent
-import android.content.IntentFilter
 import android.net.*
 import android.os.Build
 import androidx.annotation.RequiresApi
 import java.io.Closeable
-import java.lang.Exception
 
 /*
     For documentation on this class see: https://github.com/M7mdZain/InternetConnectivityLibrary
@@ -16,6 +12,8 @@ import java.lang.Exception
      activities.  Instead made the class closeable to clear the listeners.  This allow one:
      val result = Connection(context).use { resource -> resource.isOnline();}
      Or just call close() manually when done (e.g. try/finally).
+    NOTE: The network callback is registered once, by the NetworkMonitor, and the state
+     kept there.  So creating a Connection is cheap, and isOnline() is just a lookup.
  */
 class Connection(private var mContext: Context) : Closeable {
 
@@ -34,77 +32,29 @@ class Connection(private var mContext: Context) : Closeable {
         /**
          * Indicates there is no available network.
          */
-        private const val NO_NETWORK_AVAILABLE = -1
+        const val NO_NETWORK_AVAILABLE = -1
 
     }
 
     private var mConnectivityMgr: ConnectivityManager? = null
 
-    private var mNetworkStateReceiver: NetworkStateReceiver? = null
-
-    /*
-     * boolean indicates if my device is connected to the internet or not
-     * */
-    private var mIsConnected = false
-    private var mConnectionMonitor: ConnectionMonitor? = null
-
-
+    // Listeners added through this instance, removed on close().
+    private val mListeners = ArrayList<ConnectionStateListener>()
 
     interface ConnectionStateListener {
         fun onAvailable(isAvailable: Boolean)
     }
 
     init {
-        mConnectivityMgr = mContext.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            mConnectionMonitor = ConnectionMonitor()
-            val networkRequest = NetworkRequest.Builder()
-                .addTransportType(NetworkCapabilities.TRANSPORT_CELLULAR)
-                .addTransportType(NetworkCapabilities.TRANSPORT_WIFI)
-                .build()
-            mConnectivityMgr!!.registerNetworkCallback(networkRequest, mConnectionMonitor!!)
-        }
+        NetworkMonitor.start(mContext)
     }
 
 
     /**
-     * Returns true if connected to the internet, and false otherwise
-     *
-     * NetworkInfo is deprecated in API 29
-     * https://developer.android.com/reference/android/net/NetworkInfo
-     *
-     * getActiveNetworkInfo() is deprecated in API 29
-     * https://developer.android.com/reference/android/net/ConnectivityManager#getActiveNetworkInfo()
-     *
-     * getNetworkInfo(int) is deprecated as of API 23
-     * https://developer.android.com/reference/android/net/ConnectivityManager#getNetworkInfo(int)
+     * Returns true if connected to the internet, and false otherwise.
+     * This is the last state seen by the NetworkMonitor, so it does not block.
      */
-    fun isOnline(): Boolean {
-        mIsConnected = false
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
-            // Checking internet connectivity
-            var activeNetwork: NetworkInfo? = null
-            if (mConnectivityMgr != null) {
-                activeNetwork = mConnectivityMgr!!.activeNetworkInfo // Deprecated in API 29
-            }
-            mIsConnected = activeNetwork != null
-        } else {
-            val allNetworks = mConnectivityMgr!!.allNetworks // added in API 21 (Lollipop)
-            for (network in allNetworks) {
-                val networkCapabilities = mConnectivityMgr!!.getNetworkCapabilities(network)
-                if (networkCapabilities != null) {
-                    if (networkCapabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET) &&
-                        networkCapabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)
-                    )
-                        if (networkCapabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)
-                            || networkCapabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)
-                            || networkCapabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)
-                        ) mIsConnected = true
-                }
-            }
-        }
-        return mIsConnected
-    }
+    fun isOnline(): Boolean = NetworkMonitor.online
 
 
     /**
@@ -114,39 +64,21 @@ class Connection(private var mContext: Context) : Closeable {
      * TRANSPORT_CELLULAR >> When Cellular is the active network
      * TRANSPORT_WIFI >> When Wi-Fi is the Active network
      */
-    fun getActiveNetwork(): Int {
-        val activeNetwork = mConnectivityMgr!!.activeNetworkInfo // Deprecated in API 29
-        if (activeNetwork != null) if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            val capabilities = mConnectivityMgr!!.getNetworkCapabilities(
-                mConnectivityMgr!!.activeNetwork
-            )
-            if (capabilities != null) if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
-                // connected to mobile data
-                return TRANSPORT_CELLULAR
-            } else if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
-                // connected to wifi
-                return TRANSPORT_WIFI
-            }
-        } else {
-            if (activeNetwork.type == ConnectivityManager.TYPE_MOBILE) { // Deprecated in API 28
-                // connected to mobile data
-                return TRANSPORT_CELLULAR
-            } else if (activeNetwork.type == ConnectivityManager.TYPE_WIFI) { // Deprecated in API 28
-                // connected to wifi
-                return TRANSPORT_WIFI
-            }
-        }
-        return NO_NETWORK_AVAILABLE
-    }
+    fun getActiveNetwork(): Int = NetworkMonitor.transport
 
 
+    private fun manager(): ConnectivityManager {
+        if (mConnectivityMgr == null) mConnectivityMgr = mContext.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager
+        return mConnectivityMgr!!
+    }
+
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
     fun getAvailableNetworksCount(): Int {
         var count = 0
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            val allNetworks = mConnectivityMgr!!.allNetworks // added in API 21 (Lollipop)
+            val allNetworks = manager().allNetworks // added in API 21 (Lollipop)
             for (network in allNetworks) {
-                val networkCapabilities = mConnectivityMgr!!.getNetworkCapabilities(network)
+                val networkCapabilities = manager().getNetworkCapabilities(network)
                 if (networkCapabilities != null) if (networkCapabilities.hasTransport(
                         NetworkCapabilities.TRANSPORT_WIFI
                     )
@@ -162,9 +94,9 @@ class Connection(private var mContext: Context) : Closeable {
         val activeNetworks: MutableList<Int> = ArrayList()
         val allNetworks: Array<Network> // added in API 21 (Lollipop)
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            allNetworks = mConnectivityMgr!!.allNetworks
+            allNetworks = manager().allNetworks
             for (network in allNetworks) {
-                val networkCapabilities = mConnectivityMgr!!.getNetworkCapabilities(network)
+                val networkCapabilities = manager().getNetworkCapabilities(network)
                 if (networkCapabilities != null) {
                     if (networkCapabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) activeNetworks.add(TRANSPORT_WIFI)
                     if (networkCapabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) activeNetworks.add(TRANSPORT_CELLULAR)
@@ -175,78 +107,21 @@ class Connection(private var mContext: Context) : Closeable {
     }
 
     /*
-        This method allow caller to listen for network changes.
+        This method allow caller to listen for network changes.  The listener stays
+        with the NetworkMonitor until this Connection is closed.
      */
     fun onInternetStateListener(listener: ConnectionStateListener) {
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
-            mNetworkStateReceiver = NetworkStateReceiver(listener)
-            val intentFilter = IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION)
-            mContext.registerReceiver(mNetworkStateReceiver, intentFilter)
-        } else {
-            mConnectionMonitor!!.setOnConnectionStateListener(listener)
-        }
+        mListeners.add(listener)
+        NetworkMonitor.addListener(listener)
     }
 
     /*
-        Allows resource management for the listeners.
+        Allows resource management for the listeners.  The network callback itself
+        belongs to the NetworkMonitor and is not released.
      */
     override fun close() {
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                if (mConnectionMonitor != null)
-                    mConnectivityMgr!!.unregisterNetworkCallback(mConnectionMonitor!!)
-            } else {
-                if (mNetworkStateReceiver != null) mContext.unregisterReceiver(mNetworkStateReceiver)
-            }
-        } catch (ex: Exception) {
-            ExpClass.logEX(ex, javaClass.name)
-        }
-    }
-
-    inner class NetworkStateReceiver(var mListener: ConnectionStateListener) : BroadcastReceiver() {
-        override fun onReceive(context: Context, intent: Intent) {
-            if (intent.extras != null) {
-                val activeNetworkInfo: NetworkInfo? =
-                    mConnectivityMgr?.getActiveNetworkInfo() // deprecated in API 29
-
-                /*
-                 * activeNetworkInfo.getState() deprecated in API 28
-                 * NetworkInfo.State.CONNECTED deprecated in API 29
-                 */
-                if (!mIsConnected && activeNetworkInfo != null && activeNetworkInfo.state == NetworkInfo.State.CONNECTED) {
-                    mIsConnected = true
-                    mListener.onAvailable(true)
-                } else if (intent.getBooleanExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, java.lang.Boolean.FALSE)) {
-                    if (!isOnline()) {
-                        mListener.onAvailable(false)
-                        mIsConnected = false
-                    }
-                }
-            }
-        }
-    }
-
-    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
-    inner class ConnectionMonitor : ConnectivityManager.NetworkCallback() {
-        private var mConnectionStateListener: ConnectionStateListener? = null
-        fun setOnConnectionStateListener(connectionStateListener: ConnectionStateListener?) {
-            mConnectionStateListener = connectionStateListener
-        }
-
-        override fun onAvailable(network: Network) {
-            if (mIsConnected) return
-            if (mConnectionStateListener != null) {
-                mConnectionStateListener!!.onAvailable(true)
-                mIsConnected = true
-            }
-        }
-
-        override fun onLost(network: Network) {
-            if (getAvailableNetworksCount() == 0) {
-                mConnectionStateListener?.onAvailable(false)
-                mIsConnected = false
-            }
-        }
+        for (listener in mListeners) NetworkMonitor.removeListener(listener)
+        mListeners.clear()
     }
 
-}
\ No newline at end of file
+}
@@ -76,6 +76,7 @@ public class Constants {
     public static final String IN_DSPL_NAME = "DispalyName";
     public static final String IN_DSPL_TGT = "TargetAddr";
     public static final String IN_USER_ACCT = "UserAccount";
+    public static final String IN_USER_ACCTS = "UserAccounts";
     public static final String IN_TIMESTAMP = "timestamp";
     public static final String IN_EXACTPICK = "exactpick";
     public static final String IN_PERIOD = "period";
@@ -133,6 +134,11 @@ public class Constants {
     public static final String FTI_FIREBASE_VERIFY = "3";   // 3 = Firebase
     public static final String FTI_SOLO_VERIFY = "4";       // 4 = Solo
     public static final int NETWORK_DOWN = 99;          // Sometimes it is nice to know the issue was a bad network.
+    public static final long OUTBOX_RETRY_BASE = 15000;     // First wait (msec) after a failed outbox request, doubles each time.
+    public static final long OUTBOX_RETRY_MAX = 3600000;    // Longest wait (msec) between outbox attempts.
+    public static final int OUTBOX_MAX_TRIES = 12;          // Give up on an outbox request after this many failures.
+    public static final int INVITE_PARALLEL = 3;            // Most invites sent at the same time, see SendInviteThread.
+    public static final long ACTOR_PERSIST_DELAY = 1000;    // Wait (msec) to gather Actor changes before saving them, see ActorStore.
 
     /* Constants used for Analytics */
     public static final String AN_UP_TICKET = "ticket";
@@ -150,17 +156,8 @@ public class Constants {
     public static final String CP_LINKED = "linked";
     public static final String CP_FACE = "face";
     public static final String CP_BUTTON = "button";
+    public static final String CP_PICKED = "picked";
     public static final String TITLE_ROW = "AliCon2016";
-    /* History list. */
-    public static final String HS_REM_ID = "history.reminder";
-    public static final String HS_TIME = "history.time";
-    public static final String HS_WHO_FROM = "history.source";
-    public static final String HS_MSG = "history.message";
-    public static final String HS_WHO_TO = "history.target";
-    public static final String HS_RECURS = "history.recurs";
-    public static final String HS_SNOOZE = "hostory.snooze";
-    public static final String HS_LAST_15 = "history.new";
-    public static final String HS_TIME_PAST = "history.past";
     /* Recurrence. */
     public static final int UNIT_TYPE_DAY = 4;
     public static final int UNIT_TYPE_MONTH = 6;
@@ -211,8 +208,7 @@ public class Constants {
     public static final String DB_Table_ID = BaseColumns._ID + " = " + SUB_ZZZ;
     public static final String DB_Table_ServerID = MessageDB.MESSAGE_SRVR_ID + " = " + SUB_ZZZ;
     public static final String DB_FriendExact = "select * from friend where " + DB_Table_ID;
-    public static final String DB_PendingCnt = "select count(" + MessageDB.MESSAGE_ID + ") from message where " + MessageDB.MESSAGE_TIME + " >= '" + SUB_ZZZ + "'";
-    public static final String DB_MessagesAll = "select * from message";
+    public static final String DB_PendingCnt = "select count(" + MessageDB.MESSAGE_ID + ") from message where " + MessageDB.MESSAGE_TIME_MS + " >= ?";
     public static final String DB_MessageByLocal = "select * from message where " + MessageDB.MESSAGE_ID + " = '" + SUB_ZZZ + "'";
     public static final String DB_MessageByServer = "select * from message where " + MessageDB.MESSAGE_SRVR_ID + " = '" + SUB_ZZZ + "'";
 
@@ -0,0 +1,199 @@
+package com.coolftc.prompt.utility
+
+import java.io.ByteArrayOutputStream
+import java.io.FilterInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.net.HttpURLConnection
+import java.net.URL
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ *  The HttpTransport opens and releases the connections used by WebServices.
+ *  The platform HttpURLConnection already keeps a pool of live sockets (and the
+ *  default SSL socket factory caches the TLS sessions), shared by all threads,
+ *  but a socket only goes back into the pool when the response has been read to
+ *  the end and closed.  Calling disconnect() throws it away, meaning the next call
+ *  to the same host pays for a new TCP and TLS handshake.  So here, a connection
+ *  is only disconnected if something went wrong with it, otherwise the response
+ *  is drained and closed, and the socket is left for the next call to pick up.
+ *
+ *  The JSON the API sends compresses well, so gzip is asked for and the responses
+ *  are unzipped as they stream in.  Request bodies can be zipped too, but not all
+ *  servers take that, so it is off unless compressRequests is set.  The bytes sent
+ *  and received (as sent on the wire and after unzipping) are counted by endpoint,
+ *  so the savings on metered connections can be seen.  See traffic().
+ *
+ *  Usage: open() the connection, send() any body, read the responseStream() to the
+ *  end and close it (or drain() it if the data is not needed), then release() in a
+ *  finally, passing true only if the response was fully read.
+ */
+object HttpTransport {
+    private const val MAX_IDLE_CONNECTIONS = "5"    // Per host, the API only uses one or two.
+    private const val DRAIN_LIMIT = 64 * 1024       // More left than this, cheaper to just drop the socket.
+    private const val COMPRESS_MIN = 1024           // Smaller bodies are not worth zipping.
+    private const val GZIP = "gzip"
+
+    // Zip request bodies (of COMPRESS_MIN or more), the server must support it.
+    @Volatile var compressRequests = false
+
+    /*
+     *  The running byte counts for one endpoint.  Only the bodies are counted, not the
+     *  headers.  The "Wire" counts are what went over the network, the "Data" counts
+     *  are before zipping or after unzipping.
+     */
+    class Traffic {
+        val calls = AtomicLong()
+        val sentWire = AtomicLong()
+        val sentData = AtomicLong()
+        val receivedWire = AtomicLong()
+        val receivedData = AtomicLong()
+
+        override fun toString(): String =
+            "calls=$calls sent=$sentWire/$sentData received=$receivedWire/$receivedData"
+    }
+    private val mTraffic = ConcurrentHashMap<String, Traffic>()
+
+    init {
+        System.setProperty("http.keepAlive", "true")
+        System.setProperty("http.maxConnections", MAX_IDLE_CONNECTIONS)
+    }
+
+    /*
+        Create and connect the HttpURLConnection with the settings common to all the API calls.
+        If a content type is supplied, the connection is set up for sending a request body,
+        and it is left to send() to connect (so it can still add headers).  Any extra
+        headers (e.g. for a conditional GET) are added as is.
+     */
+    @Throws(IOException::class)
+    fun open(path: String, method: String, accept: String, bearer: String, timeout: Int, contentType: String? = null,
+             headers: Map<String, String> = emptyMap()): HttpURLConnection {
+        val webC = URL(path).openConnection() as HttpURLConnection
+        webC.requestMethod = method // Available: GET, POST, PUT, DELETE, OPTIONS, HEAD and TRACE
+        webC.setRequestProperty("Accept", accept)
+        webC.setRequestProperty("Accept-Encoding", GZIP)   // Once set, unzipping is up to us.
+        if (bearer.isNotEmpty()) webC.setRequestProperty("Authorization", bearer)
+        for ((name, value) in headers) webC.setRequestProperty(name, value)
+        if (contentType != null) {
+            webC.setRequestProperty("Content-type", contentType)
+            webC.doOutput = true
+        }
+        webC.useCaches = false
+        webC.allowUserInteraction = false
+        webC.connectTimeout = timeout
+        webC.readTimeout = timeout
+        trafficFor(webC).calls.incrementAndGet()
+        if (contentType == null) webC.connect()   // Otherwise, sending the body connects.
+        return webC
+    }
+
+    /*
+        Write the request body (zipped if it is worth it and turned on), and close it.
+     */
+    @Throws(IOException::class)
+    fun send(webC: HttpURLConnection, body: ByteArray) {
+        var wire = body
+        if (compressRequests && body.size >= COMPRESS_MIN) {
+            val zipped = ByteArrayOutputStream(body.size / 4)
+            GZIPOutputStream(zipped).use { it.write(body) }
+            wire = zipped.toByteArray()
+            webC.setRequestProperty("Content-Encoding", GZIP)
+        }
+        webC.setFixedLengthStreamingMode(wire.size)
+        webC.outputStream.use { it.write(wire) }
+        val traffic = trafficFor(webC)
+        traffic.sentWire.addAndGet(wire.size.toLong())
+        traffic.sentData.addAndGet(body.size.toLong())
+    }
+
+    /*
+        The response body, which on failure is the error stream.  It is unzipped if the
+        server zipped it.  A response with no body (some servers send none on errors)
+        comes back as an empty stream.
+     */
+    @Throws(IOException::class)
+    fun responseStream(webC: HttpURLConnection): InputStream {
+        val stream = (if (webC.responseCode in 200..299) webC.inputStream else webC.errorStream)
+            ?: return ByteArray(0).inputStream()
+        val traffic = trafficFor(webC)
+        val wire = CountingStream(stream, traffic.receivedWire)
+        if (!GZIP.equals(webC.contentEncoding, ignoreCase = true)) return CountingStream(wire, traffic.receivedData)
+        // An empty zipped body has no gzip header, reading it would fail.
+        if (webC.contentLength == 0) return wire
+        return CountingStream(GZIPInputStream(wire), traffic.receivedData)
+    }
+
+    /*
+        The byte counts so far, by endpoint (see endpoint()).  The map is a copy, but the
+        counts are live.
+     */
+    fun traffic(): Map<String, Traffic> = HashMap(mTraffic)
+
+    /*
+        The endpoint name is the path with any numeric parts (ids) replaced by "#",
+        e.g. https://host/api/user/123/friends?x=1 becomes /api/user/#/friends.
+        Otherwise every user and message would get its own counters.
+     */
+    fun endpoint(url: URL): String =
+        url.path.split('/').joinToString("/") { part -> if (part.isNotEmpty() && part.all { it.isDigit() }) "#" else part }
+
+    private fun trafficFor(webC: HttpURLConnection): Traffic =
+        mTraffic.getOrPut(endpoint(webC.url)) { Traffic() }
+
+    // Adds what is read through it to a counter.
+    private class CountingStream(stream: InputStream, private val counter: AtomicLong) : FilterInputStream(stream) {
+        override fun read(): Int {
+            val value = super.read()
+            if (value != -1) counter.incrementAndGet()
+            return value
+        }
+
+        override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+            val count = super.read(buffer, offset, length)
+            if (count > 0) counter.addAndGet(count.toLong())
+            return count
+        }
+
+        override fun skip(count: Long): Long {
+            val skipped = super.skip(count)
+            if (skipped > 0) counter.addAndGet(skipped)
+            return skipped
+        }
+    }
+
+    /*
+        Read and throw away what is left of a response, then close it.  Returns false
+        if there was too much left over to bother, in which case the connection should
+        not be reused.
+     */
+    @Throws(IOException::class)
+    fun drain(stream: InputStream): Boolean {
+        stream.use {
+            val buffer = ByteArray(4096)
+            var total = 0
+            while (total <= DRAIN_LIMIT) {
+                val read = it.read(buffer)
+                if (read == -1) return true
+                total += read
+            }
+            return false
+        }
+    }
+
+    /*
+        Done with the connection.  If the response was read to the end and closed, the
+        socket is already back in the pool and nothing more is needed.  Otherwise the
+        state of the socket is unknown, so it is disconnected.
+     */
+    fun release(webC: HttpURLConnection?, reusable: Boolean) {
+        if (webC == null || reusable) return
+        try {
+            webC.disconnect()
+        } catch (ex: Exception) {
+            ExpClass.logEX(ex, this.javaClass.name + ".release")
+        }
+    }
+}
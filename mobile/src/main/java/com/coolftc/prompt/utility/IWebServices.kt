@@ -5,6 +5,8 @@ import java.time.LocalDate
 
 interface IWebServices {
     fun <U> callGetApi(path: String, typeU: Class<U>, token: String): U?
+    fun <U> callGetApiIfChanged(context: Context, path: String, typeU: Class<U>, token: String): WebServices.Changed<U>?
+    fun saveCached(context: Context, path: String, token: String, changed: WebServices.Changed<*>)
     fun <T> callPostApi(path: String, input: T, token: String)
     fun <T, U> callPostApi(path: String, input: T, typeU: Class<U>, token: String): U?
     fun <T> callPutApi(path: String, input: T, token: String)
@@ -121,6 +121,7 @@ public class KTime {
     public static final int KT_DAYS = 4;
     public static final int KT_WEEKS = 5;
     public static final int KT_YEARS = 6;
+    public static final long KT_INVALID = Long.MIN_VALUE;  // Returned by Parse3339() for a bad time.
 
 
     /* Some helpful constants for parsing the date */
@@ -166,9 +167,7 @@ public class KTime {
      *  Given the available output formats are not granular, truncation can occur.
      */
     public static long CalcDateDifference(String tndxOne, String tndxTwo, String inFormat, int outFormat) throws ExpParseToCalendar {
-        Calendar time1 = ParseToCalendar(tndxOne, inFormat);
-        Calendar time2 = ParseToCalendar(tndxTwo, inFormat);
-        long holdDiff = Math.abs(time1.getTimeInMillis() - time2.getTimeInMillis());
+        long holdDiff = Math.abs(ParseToMillis(tndxOne, inFormat) - ParseToMillis(tndxTwo, inFormat));
         if (holdDiff == 0) return 0;
         switch (outFormat){
             case KT_MILLISECONDS:
@@ -195,6 +194,9 @@ public class KTime {
      *  the data be passed in.  The input date must be UTC.
      */
     public static boolean IsPast(String inTime, String inFormat)  throws ExpParseToCalendar{
+        if (inFormat.equals(KT_fmtDate3339fk)) {
+            return ParseToMillis(inTime, inFormat) < System.currentTimeMillis();
+        }
         String now = ParseNow(inFormat, UTC_TIMEZONE).toString();
         Calendar inTimeC = ParseToCalendar(inTime, inFormat);
         Calendar nowC = ParseToCalendar(now, inFormat);
@@ -286,6 +288,129 @@ public class KTime {
         }
     }
 
+    /*
+     *  Returns the epoch milliseconds of a time in the KT_fmtDate3339fk format, e.g.
+     *  "2021-10-17T14:05:00.123-06:00", or KT_INVALID if it cannot be read.  This is
+     *  the format used for all the stored and API times, and it is parsed a lot (many
+     *  times per row of a list), so it does not go through ParseToCalendar().  It reads
+     *  the characters in place and does the date math directly, no Calendar or other
+     *  objects are created.  It is a little more forgiving than ParseToCalendar(), in
+     *  that the fraction of a second can have any number of digits (or be missing),
+     *  and the offset can be "Z", "UTC", "GMT", +hh:mm, +hhmm or +hh (optionally after
+     *  UTC/GMT, as Android DateFormat can output).
+     */
+    public static long Parse3339(String inTime) {
+        if (inTime == null || inTime.length() < 20) return KT_INVALID;
+        int year = Digits(inTime, 0, 4);
+        int month = Digits(inTime, 5, 2);
+        int day = Digits(inTime, 8, 2);
+        int hour = Digits(inTime, 11, 2);
+        int minute = Digits(inTime, 14, 2);
+        int second = Digits(inTime, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 24 ||
+            minute < 0 || minute > 59 || second < 0 || second > 60) return KT_INVALID;
+        if (inTime.charAt(4) != '-' || inTime.charAt(7) != '-' || inTime.charAt(13) != ':' || inTime.charAt(16) != ':') return KT_INVALID;
+        char sep = inTime.charAt(10);
+        if (sep != 'T' && sep != 't' && sep != ' ') return KT_INVALID;
+
+        // Fraction of a second, only the milliseconds are kept.
+        int ndx = 19;
+        int msec = 0;
+        if (inTime.charAt(ndx) == '.') {
+            int scale = 100;
+            for (ndx++; ndx < inTime.length() && IsDigit(inTime.charAt(ndx)); ndx++) {
+                msec += (inTime.charAt(ndx) - '0') * scale;
+                scale /= 10;
+            }
+        }
+
+        long offset = ParseOffset3339(inTime, ndx);
+        if (offset == KT_INVALID) return KT_INVALID;
+        long days = DaysFromCivil(year, month, day);
+        return ((((days * 24 + hour) * 60 + minute) * 60 + second) * 1000) + msec - offset;
+    }
+
+    /*
+     *  Returns the UTC offset, in milliseconds, of a time in the KT_fmtDate3339fk
+     *  format, or KT_INVALID if it cannot be read.  See Parse3339().
+     */
+    public static long Parse3339Offset(String inTime) {
+        if (inTime == null || inTime.length() < 20) return KT_INVALID;
+        int ndx = 19;
+        if (inTime.charAt(ndx) == '.') {
+            for (ndx++; ndx < inTime.length() && IsDigit(inTime.charAt(ndx)); ndx++);
+        }
+        return ParseOffset3339(inTime, ndx);
+    }
+
+    /*
+     *  The KT_fmtDate3339fk times are parsed with Parse3339(), anything else (or any
+     *  time it cannot handle) goes through the general ParseToCalendar().
+     */
+    private static long ParseToMillis(String inTime, String inFormat) throws ExpParseToCalendar {
+        if (inFormat.equals(KT_fmtDate3339fk)) {
+            long msec = Parse3339(inTime);
+            if (msec != KT_INVALID) return msec;
+        }
+        return ParseToCalendar(inTime, inFormat).getTimeInMillis();
+    }
+
+    // Read the offset that starts at "ndx" (after any fractional seconds).
+    private static long ParseOffset3339(String inTime, int ndx) {
+        int end = inTime.length();
+        while (end > ndx && inTime.charAt(end - 1) == ' ') end--;
+        while (ndx < end && inTime.charAt(ndx) == ' ') ndx++;
+        if (end - ndx == 1 && (inTime.charAt(ndx) == 'Z' || inTime.charAt(ndx) == 'z')) return 0;
+        if (inTime.regionMatches(true, ndx, UTC_TIMEZONE, 0, 3) || inTime.regionMatches(true, ndx, "GMT", 0, 3)) {
+            ndx += 3;
+            if (ndx == end) return 0;
+        }
+        if (end - ndx < 3) return KT_INVALID;
+
+        char sign = inTime.charAt(ndx);
+        if (sign != '+' && sign != '-') return KT_INVALID;
+        int hours = Digits(inTime, ndx + 1, 2);
+        int minutes = 0;
+        ndx += 3;
+        if (ndx < end && inTime.charAt(ndx) == ':') ndx++;
+        if (ndx < end) {
+            if (end - ndx != 2) return KT_INVALID;
+            minutes = Digits(inTime, ndx, 2);
+        }
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) return KT_INVALID;
+        long offset = (hours * 60 + minutes) * 60 * 1000L;
+        return sign == '-' ? -offset : offset;
+    }
+
+    // The number made of "count" digits at "ndx", or -1 if any are not digits.
+    private static int Digits(String inTime, int ndx, int count) {
+        if (ndx + count > inTime.length()) return -1;
+        int value = 0;
+        for (int i = ndx; i < ndx + count; i++) {
+            char digit = inTime.charAt(i);
+            if (!IsDigit(digit)) return -1;
+            value = value * 10 + (digit - '0');
+        }
+        return value;
+    }
+
+    private static boolean IsDigit(char digit) { return digit >= '0' && digit <= '9'; }
+
+    /*
+     *  The number of days since 1970-01-01 for a (proleptic Gregorian) date, see
+     *  http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+     *  A day past the end of the month just rolls into the next one, same as a
+     *  lenient Calendar.
+     */
+    private static long DaysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yoe = year - era * 400;                                         // [0, 399]
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1; // [0, 365]
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;                    // [0, 146096]
+        return era * 146097L + doe - 719468;
+    }
+
     /*
      *  Take a string based time and its format description, then generate a
      *  Calendar object.  If a timezone is not supplied the local one is used.
@@ -0,0 +1,144 @@
+package com.coolftc.prompt.utility
+
+import android.os.Process
+import android.os.SystemClock
+import java.util.EnumMap
+import java.util.concurrent.Future
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ *  The Lanes are the shared background workers for the app.  Work that used to start
+ *  its own Thread is submitted to one of them instead, so there is a limit to how much
+ *  runs at once, no matter how fast the buttons get pressed.
+ *  NETWORK  - Calls to the web service.  A few at a time, since they mostly wait.
+ *  DB       - Local database writes.  One at a time, as many open writers on the same
+ *             database are what cause the "database is locked" problems.
+ *  PREFETCH - Reading ahead for the screens, e.g. the history pages.  One at a time, at
+ *             a lower priority, and the first to fill up.
+ *  Each lane has a limited queue.  Work submitted to a full lane is not run, it is
+ *  logged and submit() returns null.  The threads go away when there is nothing to do.
+ *
+ *  The time spent waiting in the queue and running is kept for each lane, along with
+ *  the deepest the queue has been, see metrics() and depth().
+ */
+object Lanes {
+    private const val KEEP_ALIVE_SEC = 30L
+
+    enum class Lane(val threads: Int, val capacity: Int, val priority: Int) {
+        NETWORK(3, 64, Process.THREAD_PRIORITY_BACKGROUND),
+        DB(1, 64, Process.THREAD_PRIORITY_BACKGROUND),
+        PREFETCH(1, 16, Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_LESS_FAVORABLE)
+    }
+
+    /*
+     *  The running counts for one lane.  The times are in milliseconds, "wait" is from
+     *  submit() until the work starts, "run" is how long the work takes.
+     */
+    class Metrics {
+        val submitted = AtomicLong()
+        val completed = AtomicLong()
+        val failed = AtomicLong()
+        val rejected = AtomicLong()
+        val waitMSec = AtomicLong()
+        val maxWaitMSec = AtomicLong()
+        val runMSec = AtomicLong()
+        val maxRunMSec = AtomicLong()
+        val maxDepth = AtomicInteger()
+
+        override fun toString(): String {
+            val done = (completed.get() + failed.get()).coerceAtLeast(1)
+            return "submitted=$submitted completed=$completed failed=$failed rejected=$rejected " +
+                "wait(avg/max)=${waitMSec.get() / done}/$maxWaitMSec run(avg/max)=${runMSec.get() / done}/$maxRunMSec maxDepth=$maxDepth"
+        }
+    }
+
+    private val mExecutors = EnumMap<Lane, ThreadPoolExecutor>(Lane::class.java)
+    private val mMetrics = EnumMap<Lane, Metrics>(Lane::class.java)
+
+    init {
+        for (lane in Lane.values()) {
+            val executor = ThreadPoolExecutor(lane.threads, lane.threads, KEEP_ALIVE_SEC, TimeUnit.SECONDS,
+                LinkedBlockingQueue(lane.capacity), LaneThreads(lane))
+            executor.allowCoreThreadTimeOut(true)
+            mExecutors[lane] = executor
+            mMetrics[lane] = Metrics()
+        }
+    }
+
+    /*
+        Run the work on the lane.  Returns the Future, which can be used to cancel it, or
+        null if the lane is full.  Exceptions thrown by the work are logged, since there
+        is usually no one waiting on the Future to see them.
+     */
+    @JvmStatic
+    fun submit(lane: Lane, work: Runnable): Future<*>? {
+        val metrics = mMetrics.getValue(lane)
+        val executor = mExecutors.getValue(lane)
+        val queued = SystemClock.elapsedRealtime()
+        return try {
+            val future = executor.submit(Runnable {
+                val start = SystemClock.elapsedRealtime()
+                record(metrics.waitMSec, metrics.maxWaitMSec, start - queued)
+                try {
+                    work.run()
+                    metrics.completed.incrementAndGet()
+                } catch (ex: Exception) {
+                    metrics.failed.incrementAndGet()
+                    ExpClass.logEX(ex, this.javaClass.name + ".submit-" + lane.name)
+                } finally {
+                    val elapsed = SystemClock.elapsedRealtime() - start
+                    record(metrics.runMSec, metrics.maxRunMSec, elapsed)
+                }
+            })
+            metrics.submitted.incrementAndGet()
+            raise(metrics.maxDepth, executor.queue.size)
+            future
+        } catch (ex: RejectedExecutionException) {
+            metrics.rejected.incrementAndGet()
+            ExpClass.logEX(ex, this.javaClass.name + ".submit-" + lane.name)
+            null
+        }
+    }
+
+    // The counts so far for each lane.  The map is a copy, but the counts are live.
+    @JvmStatic
+    fun metrics(): Map<Lane, Metrics> = EnumMap(mMetrics)
+
+    // How much work is waiting on the lane right now.
+    @JvmStatic
+    fun depth(lane: Lane): Int = mExecutors.getValue(lane).queue.size
+
+    private fun record(total: AtomicLong, max: AtomicLong, msec: Long) {
+        total.addAndGet(msec)
+        raise(max, msec)
+    }
+
+    // Keep the larger of the two.  The NETWORK threads race on these, so it has to be
+    // a compare and set, or a smaller value could overwrite a larger one.
+    private fun raise(max: AtomicLong, value: Long) {
+        var last = max.get()
+        while (value > last && !max.compareAndSet(last, value)) last = max.get()
+    }
+
+    private fun raise(max: AtomicInteger, value: Int) {
+        var last = max.get()
+        while (value > last && !max.compareAndSet(last, value)) last = max.get()
+    }
+
+    // Names the threads after the lane (handy in a trace) and sets their priority.
+    private class LaneThreads(private val lane: Lane) : ThreadFactory {
+        private val mCount = AtomicInteger()
+
+        override fun newThread(work: Runnable): Thread =
+            Thread({
+                Process.setThreadPriority(lane.priority)
+                work.run()
+            }, "lane-" + lane.name.lowercase() + "-" + mCount.incrementAndGet())
+    }
+}
@@ -0,0 +1,127 @@
+package com.coolftc.prompt.utility
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.net.*
+import android.os.Build
+import androidx.annotation.RequiresApi
+import com.coolftc.prompt.utility.Connection.ConnectionStateListener
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ *  The NetworkMonitor keeps track of the network state for the whole app.  It listens
+ *  to the ConnectivityManager from the first time start() is called until the process
+ *  ends, so checking if the device is online is just a read of the last known state,
+ *  and does not need a callback registered (and removed) around each API call.
+ *  The state is worked out the same way Connection.isOnline() used to, each time the
+ *  system reports a network change.  Listeners are told when the device goes on or
+ *  offline, on the thread the system reports the change (not the UI thread).
+ *  Connection is the usual way to use this, see there.
+ */
+object NetworkMonitor {
+    // The last known state, updated by the system callbacks.
+    @Volatile var online = false
+        private set
+    @Volatile var transport = Connection.NO_NETWORK_AVAILABLE
+        private set
+
+    private var mConnectivityMgr: ConnectivityManager? = null
+    private val mListeners = CopyOnWriteArrayList<ConnectionStateListener>()
+
+    /*
+        Start listening, if not already.  The application context is used, since the
+        listening lasts as long as the process.  The current state is read right away,
+        so it is good as soon as this returns.
+     */
+    @Synchronized
+    fun start(context: Context) {
+        if (mConnectivityMgr != null) return
+        val appContext = context.applicationContext ?: context
+        val manager = appContext.getSystemService(Context.CONNECTIVITY_SERVICE) as ConnectivityManager
+        mConnectivityMgr = manager
+        refresh(null)
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                val networkRequest = NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build()
+                manager.registerNetworkCallback(networkRequest, NetworkWatch())
+            } else {
+                appContext.registerReceiver(NetworkStateReceiver(), IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION))
+            }
+        } catch (ex: Exception) {
+            ExpClass.logEX(ex, this.javaClass.name + ".start")
+        }
+    }
+
+    fun addListener(listener: ConnectionStateListener) { mListeners.addIfAbsent(listener) }
+    fun removeListener(listener: ConnectionStateListener) { mListeners.remove(listener) }
+
+    /*
+        Work out the current state, and tell the listeners if being online changed.
+        A network that was just lost can still show up for a moment, so it is skipped.
+        NetworkInfo and getActiveNetworkInfo() are deprecated in API 29, but are still
+        the only option on the older versions.
+     */
+    @Synchronized
+    private fun refresh(lost: Network?) {
+        val manager = mConnectivityMgr ?: return
+        var isConnected = false
+        try {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+                val activeNetwork = manager.activeNetworkInfo
+                isConnected = activeNetwork != null && activeNetwork.isConnected
+            } else {
+                for (network in manager.allNetworks) {
+                    if (network == lost) continue
+                    val networkCapabilities = manager.getNetworkCapabilities(network) ?: continue
+                    if (networkCapabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET) &&
+                        networkCapabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED) &&
+                        (networkCapabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)
+                            || networkCapabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)
+                            || networkCapabilities.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET))
+                    ) isConnected = true
+                }
+            }
+            transport = if (isConnected) activeTransport(manager) else Connection.NO_NETWORK_AVAILABLE
+        } catch (ex: Exception) {
+            ExpClass.logEX(ex, this.javaClass.name + ".refresh")
+        }
+        if (online == isConnected) return
+        online = isConnected
+        for (listener in mListeners) listener.onAvailable(isConnected)
+    }
+
+    private fun activeTransport(manager: ConnectivityManager): Int {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            val capabilities = manager.getNetworkCapabilities(manager.activeNetwork)
+            if (capabilities != null) {
+                if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) return Connection.TRANSPORT_CELLULAR
+                if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) return Connection.TRANSPORT_WIFI
+            }
+        } else {
+            val activeNetwork = manager.activeNetworkInfo // Deprecated in API 29
+            if (activeNetwork != null) {
+                if (activeNetwork.type == ConnectivityManager.TYPE_MOBILE) return Connection.TRANSPORT_CELLULAR
+                if (activeNetwork.type == ConnectivityManager.TYPE_WIFI) return Connection.TRANSPORT_WIFI
+            }
+        }
+        return Connection.NO_NETWORK_AVAILABLE
+    }
+
+    // Before Lollipop, changes come as a broadcast.
+    private class NetworkStateReceiver : BroadcastReceiver() {
+        override fun onReceive(context: Context, intent: Intent) {
+            refresh(null)
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private class NetworkWatch : ConnectivityManager.NetworkCallback() {
+        override fun onAvailable(network: Network) { refresh(null) }
+        override fun onCapabilitiesChanged(network: Network, networkCapabilities: NetworkCapabilities) { refresh(null) }
+        override fun onLost(network: Network) { refresh(network) }
+    }
+}
@@ -0,0 +1,89 @@
+package com.coolftc.prompt.utility;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *  Type ahead filtering of an in-memory list.  The searchable text of each item
+    is lower cased once, when the filter is built, so a keystroke is just a scan
+    of "contains" checks with no per row allocation.
+    The results of the last search are remembered.  When the new search term
+    extends the last one (the usual case when typing), only the items that
+    matched last time can match now, so only those are rescanned.  Deleting
+    characters (or any other change) falls back to a scan of the whole list.
+
+ *  The filter is a snapshot of the list it was built with.  If the list changes,
+    build a new filter.  It is not thread safe, expected use is from the UI thread.
+ */
+public class TextFilter<T> {
+
+    // Supplies the searchable text of an item.  It does not need to be lower case.
+    public interface Keyer<T> {
+        String SearchKey(T item);
+    }
+
+    private final List<T> mItems;
+    private final String[] mKeys;
+    private String mLastTerm = "";
+    private final int[] mLastHits;  // Positions (in mItems) that matched mLastTerm.
+    private int mLastCount;
+
+    public TextFilter(List<T> items, Keyer<T> keyer) {
+        mItems = new ArrayList<>(items);
+        mKeys = new String[mItems.size()];
+        mLastHits = new int[mItems.size()];
+        for (int i = 0; i < mKeys.length; i++) {
+            String key = keyer.SearchKey(mItems.get(i));
+            mKeys[i] = key != null ? key.toLowerCase() : "";
+            mLastHits[i] = i;
+        }
+        mLastCount = mKeys.length;
+    }
+
+    /*
+     *  Returns the items whose search key contains the term (ignoring case), in
+     *  the original order.  An empty term returns everything.
+     */
+    public List<T> Filter(String term) {
+        String lowTerm = term != null ? term.toLowerCase() : "";
+        if (lowTerm.length() == 0) {
+            Reset();
+            return Collections.unmodifiableList(mItems);
+        }
+
+        // The hits are written back over the last ones, which is safe since a
+        // hit is never written ahead of the position being read.
+        int count = 0;
+        if (lowTerm.startsWith(mLastTerm)) {
+            for (int i = 0; i < mLastCount; i++) {
+                int ndx = mLastHits[i];
+                if (mKeys[ndx].contains(lowTerm)) mLastHits[count++] = ndx;
+            }
+        } else {
+            for (int ndx = 0; ndx < mKeys.length; ndx++) {
+                if (mKeys[ndx].contains(lowTerm)) mLastHits[count++] = ndx;
+            }
+        }
+        mLastTerm = lowTerm;
+        mLastCount = count;
+
+        List<T> found = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            found.add(mItems.get(mLastHits[i]));
+        }
+        return found;
+    }
+
+    // The number of items in the filter.
+    public int size() { return mKeys.length; }
+
+    // Everything matches the empty term.
+    private void Reset() {
+        mLastTerm = "";
+        for (int i = 0; i < mKeys.length; i++) {
+            mLastHits[i] = i;
+        }
+        mLastCount = mKeys.length;
+    }
+}
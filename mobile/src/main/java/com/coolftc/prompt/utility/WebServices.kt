@@ -4,12 +4,14 @@ import android.content.Context
 import android.content.Context.MODE_PRIVATE
 import android.content.SharedPreferences
 import com.google.gson.Gson
+import com.google.gson.JsonParseException
 import com.google.gson.reflect.TypeToken
+import com.google.gson.stream.JsonReader
 import com.google.gson.stream.JsonWriter
 import java.io.*
 import java.net.HttpURLConnection
-import java.net.URL
 import java.net.URLEncoder
+import java.security.MessageDigest
 import java.time.LocalDate
 import kotlin.jvm.Throws
 
@@ -21,6 +23,7 @@ import kotlin.jvm.Throws
  *  classes and APIs.  If the API defines an error return format, it can be managed
  *  by adding it (manually) to the checkErrResponse() method.
  *  For Kotlin only code, the @Throws(ExpClass::class) can be removed.
+ *  The connections come from the HttpTransport, which keeps them alive between calls.
  *
  *  This class requires the network permission: android.permission.INTERNET.
  *  This requires the JAVA 1.8 desugaring option enabled in for use of java.time.
@@ -51,6 +54,12 @@ class WebServices(private val Parser: Gson, private val Timeout: Int = API_TIMEO
         const val SP_BASE_URL_STORE = "API.baseURL.table"     // Shared Preference Table name.
         const val SP_BASE_URL = "API.baseURL.value"     // Shared Preference Value name.
         const val SP_BASE_URL_LIFE = "API.baseURL.age"  // Shared Preference Last Update name.
+
+        // Used for conditional GETs, see callGetApiIfChanged().
+        const val SP_CACHE_STORE = "API.cache.table"    // Shared Preference Table name.
+        const val SP_CACHE_ETAG = ".etag"               // Suffix of the ETag value name.
+        const val SP_CACHE_MODIFIED = ".modified"       // Suffix of the Last-Modified value name.
+        const val HTTP_NOT_MODIFIED = 304
     }
 
     /*
@@ -58,6 +67,9 @@ class WebServices(private val Parser: Gson, private val Timeout: Int = API_TIMEO
      * returns detailed error data, customize this class to support parsing it.
      */
     data class ErrorResponse(val message: String?)
+
+    // What callGetApiIfChanged() got, along with the validators to pass to saveCached().
+    class Changed<U>(val value: U?, val etag: String?, val modified: String?)
     data class Nothing(val data: NoData?)
     data class NoData(val filler: String?)
 
@@ -106,6 +118,70 @@ class WebServices(private val Parser: Gson, private val Timeout: Int = API_TIMEO
         return LocalDate.parse(preference.getString(SP_BASE_URL_LIFE, "1964-02-06"))
     }
 
+    /*
+        Read the whole error body as text, closing the stream when done.  This is only
+        used for error responses, which are small and need to go to checkErrResponse().
+     */
+    @Throws(IOException::class)
+    private fun readBody(stream: InputStream): String {
+        val sb = StringBuilder()
+        BufferedReader(InputStreamReader(stream, API_ENCODING)).use { br ->
+            var line: String?
+            while (br.readLine().also { line = it } != null) {
+                sb.append(line).append("\n")
+            }
+        }
+        return sb.toString()
+    }
+
+    /*
+        What readResponse() got, and if the response was drained so the connection
+        can be reused (see HttpTransport.drain()).
+     */
+    private class Response<U>(val value: U?, val reusable: Boolean)
+
+    /*
+        Read a successful response into the expected type.  The JSON is parsed as it
+        streams in, so large responses (e.g. the friend list) are never held as text.
+        If the call failed, the error body is parsed and thrown.  Either way the rest
+        of the response is drained, and if that worked the connection can be reused.
+     */
+    @Throws(ExpClass::class, IOException::class)
+    private fun <U> readResponse(webC: HttpURLConnection, typeU: Class<U>, methodName: String): Response<U> {
+        val status = webC.responseCode
+        if (status in 200..299) {
+            val stream = HttpTransport.responseStream(webC)
+            val json = JsonReader(BufferedReader(InputStreamReader(stream, API_ENCODING)))
+            json.use {
+                val result: U? = try {
+                    Parser.fromJson(it, typeU)
+                } catch (ex: Exception) {
+                    // Gson wraps any read failure, those are network issues, not bad data.
+                    val cause = ex.cause
+                    if (ex is JsonParseException && cause is IOException) throw cause
+                    throw ExpClass(ExpClass.PARSE_EXP, methodName, ex.toString(), ex)
+                }
+                // Usually just a trailing new line.
+                return Response(result, HttpTransport.drain(stream))
+            }
+        }
+        return Response(null, checkStatus(webC, methodName))
+    }
+
+    /*
+        Throws the parsed error body if the call failed, otherwise drains the (unwanted)
+        response.  Returns true if it was all drained, so the connection can be reused.
+     */
+    @Throws(ExpClass::class, IOException::class)
+    private fun checkStatus(webC: HttpURLConnection, methodName: String): Boolean {
+        val status = webC.responseCode
+        if (status in 200..299) {
+            return HttpTransport.drain(HttpTransport.responseStream(webC))
+        }
+        val er = checkErrResponse(readBody(HttpTransport.responseStream(webC)))
+        throw ExpClass(status, er.message ?: "", methodName)
+    }
+
     /*
         Retrieve a resource.  Since this is a GET, there is no request data other than the
         supplied path parameter.  Expectation is that dynamic information and parameters
@@ -122,57 +198,82 @@ class WebServices(private val Parser: Gson, private val Timeout: Int = API_TIMEO
         val methodName = this.javaClass.name + ".CallGetApi-" + path
         val bearer: String = if (token.isBlank()) token else API_BEARER + token
         var webC: HttpURLConnection? = null
+        var reusable = false
         return try {
             // Set up the connection
-            val web = URL(path)
-            webC = web.openConnection() as HttpURLConnection
-            webC.requestMethod = "GET" // Available: POST, PUT, DELETE, OPTIONS, HEAD and TRACE
-            webC.setRequestProperty("Accept", API_HEADER_ACCEPT)
-            if (bearer.isNotEmpty()) webC.setRequestProperty("Authorization", bearer)
-            webC.useCaches = false
-            webC.allowUserInteraction = false
-            webC.connectTimeout = Timeout
-            webC.readTimeout = Timeout
-            webC.connect()
+            webC = HttpTransport.open(path, "GET", API_HEADER_ACCEPT, bearer, Timeout)
             // Process the response
-            val status = webC.responseCode
-            if (status in 200..299) {
-                val br = BufferedReader(InputStreamReader(webC.inputStream, API_ENCODING))
-                val sb = StringBuilder()
-                var line: String?
-                while (br.readLine().also { line = it } != null) {
-                    sb.append(line).append("\n")
-                }
-                br.close()
-                try {
-                    Parser.fromJson(sb.toString(), typeU)
-                } catch (ex: Exception) {
-                    throw ExpClass(ExpClass.PARSE_EXP, methodName, ex.toString(), ex)
-                }
-            } else {
-                val br = BufferedReader(InputStreamReader(webC.errorStream, API_ENCODING))
-                val sb = StringBuilder()
-                var line: String?
-                while (br.readLine().also { line = it } != null) {
-                    sb.append(line).append("\n")
-                }
-                br.close()
-                val er = checkErrResponse(sb.toString())
-                throw ExpClass(status, er.message ?: "", methodName)
-            }
+            readResponse(webC, typeU, methodName).let { reusable = it.reusable; it.value }
+        } catch (ex: ExpClass) {
+            reusable = ex.Number == ExpClass.HTTP_STATUS
+            throw ex
         } catch (ex: IOException) {
             throw ExpClass(ExpClass.NETWORK_EXP, methodName, ex.toString(), ex)
         } finally {
-            if (webC != null) {
-                try {
-                    webC.disconnect()
-                } catch (ex: Exception) {
-                    throw ExpClass(ExpClass.GENERAL_EXP, methodName, ex.toString(), ex)
-                }
+            HttpTransport.release(webC, reusable)
+        }
+    }
+
+    /*
+        A GET for a resource that seldom changes, e.g. the friend list.  The ETag and
+        Last-Modified returned with the last copy are sent back (If-None-Match and
+        If-Modified-Since), and if the server says nothing has changed (304), this
+        returns null without any data being sent.  Otherwise it works like callGetApi(),
+        with the value wrapped up with the new validators.
+        The response itself is not stored, it is expected the caller keeps what it
+        needs from it (e.g. the friend table).  The validators are not saved here, the
+        caller passes them to saveCached() once its copy is safely written.  If the
+        process dies before then, the next call just gets it all again.
+
+        The validators are kept (in Shared Preferences) by URL and account, the key is
+        a hash of the two so the token is not stored again.
+     */
+    @Throws(ExpClass::class)
+    override fun <U> callGetApiIfChanged(context: Context, path: String, typeU: Class<U>, token: String): Changed<U>? {
+        val methodName = this.javaClass.name + ".CallGetApiIfChanged-" + path
+        val bearer: String = if (token.isBlank()) token else API_BEARER + token
+        val key = cacheKey(path, token)
+        val cache = context.getSharedPreferences(SP_CACHE_STORE, MODE_PRIVATE)
+        val headers = HashMap<String, String>()
+        cache.getString(key + SP_CACHE_ETAG, null)?.let { headers["If-None-Match"] = it }
+        cache.getString(key + SP_CACHE_MODIFIED, null)?.let { headers["If-Modified-Since"] = it }
+        var webC: HttpURLConnection? = null
+        var reusable = false
+        return try {
+            // Set up the connection
+            webC = HttpTransport.open(path, "GET", API_HEADER_ACCEPT, bearer, Timeout, null, headers)
+            // Process the response
+            if (webC.responseCode == HTTP_NOT_MODIFIED) {
+                reusable = HttpTransport.drain(HttpTransport.responseStream(webC))
+                return null
             }
+            val response = readResponse(webC, typeU, methodName)
+            reusable = response.reusable
+            Changed(response.value, webC.getHeaderField("ETag"), webC.getHeaderField("Last-Modified"))
+        } catch (ex: ExpClass) {
+            reusable = ex.Number == ExpClass.HTTP_STATUS
+            throw ex
+        } catch (ex: IOException) {
+            throw ExpClass(ExpClass.NETWORK_EXP, methodName, ex.toString(), ex)
+        } finally {
+            HttpTransport.release(webC, reusable)
         }
     }
 
+    // Keep the validators, so the next callGetApiIfChanged() can skip an unchanged resource.
+    override fun saveCached(context: Context, path: String, token: String, changed: Changed<*>) {
+        val key = cacheKey(path, token)
+        val editor = context.getSharedPreferences(SP_CACHE_STORE, MODE_PRIVATE).edit()
+        if (changed.etag != null) editor.putString(key + SP_CACHE_ETAG, changed.etag) else editor.remove(key + SP_CACHE_ETAG)
+        if (changed.modified != null) editor.putString(key + SP_CACHE_MODIFIED, changed.modified) else editor.remove(key + SP_CACHE_MODIFIED)
+        editor.apply()
+    }
+
+    private fun cacheKey(path: String, token: String): String {
+        val digest = MessageDigest.getInstance("SHA-256").digest((path + "\n" + token).toByteArray(charset(API_ENCODING)))
+        return digest.joinToString("") { String.format("%02x", it) }
+    }
+
     /*
         The CallPostPutApi is a general method used to process Authenticated Rest POST (or PUT)
         calls. To use it, supply the path, a request object, authorization token and the TypeWS
@@ -230,66 +331,30 @@ class WebServices(private val Parser: Gson, private val Timeout: Int = API_TIMEO
         val methodName = this.javaClass.name + ".CallPostPutApi-" + path
         val bearer: String = if (token.isBlank()) token else API_BEARER + token
         var webC: HttpURLConnection? = null
+        var reusable = false
         val typeOfRequest = object : TypeToken<T>() {}.type
         return try {
             // Set up the connection
-            val web = URL(path)
-            webC = web.openConnection() as HttpURLConnection
-            webC.requestMethod = if (post) "POST" else "PUT" // Available: POST, PUT, DELETE, OPTIONS, HEAD and TRACE
-            webC.setRequestProperty("Accept", API_HEADER_ACCEPT)
-            if (bearer.isNotEmpty()) webC.setRequestProperty("Authorization", bearer)
-            webC.setRequestProperty("Content-type", API_HEADER_CONTENT)
-            webC.doOutput = true
-            webC.useCaches = false
-            webC.allowUserInteraction = false
-            webC.connectTimeout = Timeout
-            webC.readTimeout = Timeout
-            webC.connect()
+            webC = HttpTransport.open(path, if (post) "POST" else "PUT", API_HEADER_ACCEPT, bearer, Timeout, API_HEADER_CONTENT)
             // Create the payload
-            val body: OutputStream = BufferedOutputStream(webC.outputStream)
+            val body = ByteArrayOutputStream()
             val jwrite = JsonWriter(OutputStreamWriter(body, API_ENCODING))
             Parser.toJson(input, typeOfRequest, jwrite)
-            jwrite.flush()
             jwrite.close()
+            HttpTransport.send(webC, body.toByteArray())
             // Process the response
-            val status = webC.responseCode
-            if (status in 200..299) {
-                if (typeU == Nothing::class.java) { // No return data is expected, so none returned.
-                    return null
-                }
-                val br = BufferedReader(InputStreamReader(webC.inputStream, API_ENCODING))
-                val sb = StringBuilder()
-                var line: String?
-                while (br.readLine().also { line = it } != null) {
-                    sb.append(line).append("\n")
-                }
-                br.close()
-                try {
-                    Parser.fromJson(sb.toString(), typeU)
-                } catch (ex: Exception) {
-                    throw ExpClass(ExpClass.PARSE_EXP, methodName, ex.toString(), ex)
-                }
-            } else {
-                val br = BufferedReader(InputStreamReader(webC.errorStream, API_ENCODING))
-                val sb = StringBuilder()
-                var line: String?
-                while (br.readLine().also { line = it } != null) {
-                    sb.append(line).append("\n")
-                }
-                br.close()
-                val er = checkErrResponse(sb.toString())
-                throw ExpClass(status, er.message ?: "", methodName)
+            if (typeU == Nothing::class.java) { // No return data is expected, so none returned.
+                reusable = checkStatus(webC, methodName)
+                return null
             }
+            readResponse(webC, typeU, methodName).let { reusable = it.reusable; it.value }
+        } catch (ex: ExpClass) {
+            reusable = ex.Number == ExpClass.HTTP_STATUS
+            throw ex
         } catch (ex: IOException) {
             throw ExpClass(ExpClass.NETWORK_EXP, methodName, ex.toString(), ex)
         } finally {
-            if (webC != null) {
-                try {
-                    webC.disconnect()
-                } catch (ex: Exception) {
-                    throw ExpClass(ExpClass.GENERAL_EXP, methodName, ex.toString(), ex)
-                }
-            }
+            HttpTransport.release(webC, reusable)
         }
     }
 
@@ -318,66 +383,25 @@ class WebServices(private val Parser: Gson, private val Timeout: Int = API_TIMEO
         val methodName = this.javaClass.name + ".CallPostFormApi-" + path
         val bearer: String = if (token.isBlank()) token else API_BEARER + token
         var webC: HttpURLConnection? = null
+        var reusable = false
         return try {
             // Set up the connection
-            val web = URL(path)
-            webC = web.openConnection() as HttpURLConnection
-            webC.requestMethod = "POST"
-            webC.setRequestProperty("Accept", API_HEADER_ACCEPT)
-            if (bearer.isNotEmpty()) webC.setRequestProperty("Authorization", bearer)
-            webC.setRequestProperty("Content-type", API_XFORM_CONTENT)
-            webC.doOutput = true
-            webC.useCaches = false
-            webC.allowUserInteraction = false
-            webC.connectTimeout = Timeout
-            webC.readTimeout = Timeout
-            webC.connect()
+            webC = HttpTransport.open(path, "POST", API_HEADER_ACCEPT, bearer, Timeout, API_XFORM_CONTENT)
             // Create the payload
-            val os = webC.outputStream
-            val writer = BufferedWriter(OutputStreamWriter(os, API_ENCODING))
-            writer.write(getPostDataString(params))
-            writer.flush()
-            writer.close()
-            os.close()
+            HttpTransport.send(webC, getPostDataString(params).toByteArray(charset(API_ENCODING)))
             // Process the response
-            val status = webC.responseCode
-            if (status in 200..299) {
-                if (typeU == Nothing::class.java) { // No return data is expected, so none returned.
-                    return null
-                }
-                val br = BufferedReader(InputStreamReader(webC.inputStream, API_ENCODING))
-                val sb = StringBuilder()
-                var line: String?
-                while (br.readLine().also { line = it } != null) {
-                    sb.append(line).append("\n")
-                }
-                br.close()
-                try {
-                    Parser.fromJson(sb.toString(), typeU)
-                } catch (ex: Exception) {
-                    throw ExpClass(ExpClass.PARSE_EXP, methodName, ex.toString(), ex)
-                }
-            } else {
-                val br = BufferedReader(InputStreamReader(webC.errorStream, API_ENCODING))
-                val sb = StringBuilder()
-                var line: String?
-                while (br.readLine().also { line = it } != null) {
-                    sb.append(line).append("\n")
-                }
-                br.close()
-                val er = checkErrResponse(sb.toString())
-                throw ExpClass(status, er.message ?: "", methodName)
+            if (typeU == Nothing::class.java) { // No return data is expected, so none returned.
+                reusable = checkStatus(webC, methodName)
+                return null
             }
+            readResponse(webC, typeU, methodName).let { reusable = it.reusable; it.value }
+        } catch (ex: ExpClass) {
+            reusable = ex.Number == ExpClass.HTTP_STATUS
+            throw ex
         } catch (ex: IOException) {
             throw ExpClass(ExpClass.NETWORK_EXP, methodName, ex.toString(), ex)
         } finally {
-            if (webC != null) {
-                try {
-                    webC.disconnect()
-                } catch (ex: Exception) {
-                    throw ExpClass(ExpClass.GENERAL_EXP, methodName, ex.toString(), ex)
-                }
-            }
+            HttpTransport.release(webC, reusable)
         }
     }
 
@@ -391,41 +415,19 @@ class WebServices(private val Parser: Gson, private val Timeout: Int = API_TIMEO
         val methodName = this.javaClass.name + ".callDeleteApi-" + path
         val bearer: String = if (token.isBlank()) token else API_BEARER + token
         var webC: HttpURLConnection? = null
+        var reusable = false
         try {
             // Set up the connection
-            val web = URL(path)
-            webC = web.openConnection() as HttpURLConnection
-            webC.requestMethod = "DELETE"
-            webC.setRequestProperty("Accept", API_HEADER_ACCEPT)
-            if (bearer.isNotEmpty()) webC.setRequestProperty("Authorization", bearer)
-            webC.useCaches = false
-            webC.allowUserInteraction = false
-            webC.connectTimeout = Timeout
-            webC.readTimeout = Timeout
-            webC.connect()
+            webC = HttpTransport.open(path, "DELETE", API_HEADER_ACCEPT, bearer, Timeout)
             // Process the response
-            val status = webC.responseCode
-            if (status !in 200..299) {
-                val br = BufferedReader(InputStreamReader(webC.errorStream, API_ENCODING))
-                val sb = StringBuilder()
-                var line: String?
-                while (br.readLine().also { line = it } != null) {
-                    sb.append(line).append("\n")
-                }
-                br.close()
-                val er = checkErrResponse(sb.toString())
-                throw ExpClass(status, er.message ?: "", methodName)
-            }
+            reusable = checkStatus(webC, methodName)
+        } catch (ex: ExpClass) {
+            reusable = ex.Number == ExpClass.HTTP_STATUS
+            throw ex
         } catch (ex: IOException) {
             throw ExpClass(ExpClass.NETWORK_EXP, methodName, ex.toString(), ex)
         } finally {
-            if (webC != null) {
-                try {
-                    webC.disconnect()
-                } catch (ex: Exception) {
-                    throw ExpClass(ExpClass.GENERAL_EXP, methodName, ex.toString(), ex)
-                }
-            }
+            HttpTransport.release(webC, reusable)
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+package com.coolftc.prompt.service;
+
+import com.coolftc.prompt.Account;
+import com.coolftc.prompt.Reminder;
+import com.coolftc.prompt.source.PromptRequest;
+import com.coolftc.prompt.utility.ExpClass;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ *  Checks the requests SendMessageThread queues: a group shares the local id of its
+    first prompt as the group id, a single prompt has no group, and a prompt that
+    cannot be saved stops the whole group.
+ */
+public class SendMessageThreadTest {
+
+    // Hands out row ids from the given one, and keeps what was queued.
+    private static class FakeStore implements SendMessageThread.Store {
+        long nextId;
+        long failAt = -1;
+        final List<Long> ids = new ArrayList<>();
+        final List<PromptRequest> sent = new ArrayList<>();
+
+        FakeStore(long firstId) { nextId = firstId; }
+
+        @Override
+        public long Add(Reminder prompt) {
+            return nextId == failAt ? -1 : nextId++;
+        }
+
+        @Override
+        public void Send(long localId, PromptRequest request) {
+            ids.add(localId);
+            sent.add(request);
+        }
+    }
+
+    @Test
+    public void singlePromptHasNoGroup() throws ExpClass {
+        FakeStore store = new FakeStore(41);
+        SendMessageThread.Queue(Collections.singletonList(prompt(7, "hello")), store);
+
+        assertEquals(Collections.singletonList(41L), store.ids);
+        assertEquals(0, store.sent.get(0).getGroupId());
+        assertEquals(7, store.sent.get(0).getReceiveId());
+        assertEquals("hello", store.sent.get(0).getMessage());
+    }
+
+    @Test
+    public void groupSharesFirstLocalId() throws ExpClass {
+        FakeStore store = new FakeStore(100);
+        SendMessageThread.Queue(Arrays.asList(prompt(1, "hi"), prompt(2, "hi"), prompt(3, "hi")), store);
+
+        assertEquals(Arrays.asList(100L, 101L, 102L), store.ids);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(100, store.sent.get(i).getGroupId());
+            assertEquals(i + 1, store.sent.get(i).getReceiveId());
+        }
+    }
+
+    @Test
+    public void failedSaveStopsTheGroup() {
+        FakeStore store = new FakeStore(5);
+        store.failAt = 6;
+        try {
+            SendMessageThread.Queue(Arrays.asList(prompt(1, "a"), prompt(2, "b"), prompt(3, "c")), store);
+            fail("A prompt that is not saved should throw");
+        } catch (ExpClass kx) {
+            assertEquals(ExpClass.FILE_ISSUES, kx.getNumber());
+        }
+        // Only the first was queued, and the caller's transaction drops it.
+        assertEquals(Collections.singletonList(5L), store.ids);
+    }
+
+    private static Reminder prompt(long targetId, String message) {
+        Reminder prompt = new Reminder();
+        prompt.from = new Account();
+        prompt.target = new Account();
+        prompt.target.acctId = targetId;
+        prompt.target.unique = "user" + targetId;
+        prompt.target.timezone = "UTC";
+        prompt.targetTime = "2021-10-17T08:00:00Z";
+        prompt.message = message;
+        return prompt;
+    }
+}
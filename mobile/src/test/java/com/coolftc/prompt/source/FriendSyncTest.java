@@ -0,0 +1,183 @@
+package com.coolftc.prompt.source;
+
+import com.coolftc.prompt.Account;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *  Checks the single pass friend reconciliation produces the same deletes,
+    changes and additions as the original list by list comparison.
+ */
+public class FriendSyncTest {
+
+    @Test
+    public void emptyLocalAddsEverything() {
+        Invitations server = new Invitations(
+                Arrays.asList(invite(1, "a"), invite(2, "b")),
+                Collections.singletonList(invite(3, "c")),
+                Collections.singletonList(invite(4, "d")));
+        FriendSync changes = FriendSync.Reconcile(server, new Account[0]);
+
+        assertTrue(changes.toDel.isEmpty());
+        assertTrue(changes.toChg.isEmpty());
+        assertEquals(4, changes.toAdd.size());
+        assertTrue(changes.toAdd.get(0).confirmed);
+        assertTrue(changes.toAdd.get(2).pending);
+        assertTrue(!changes.toAdd.get(3).confirmed && !changes.toAdd.get(3).pending);
+    }
+
+    @Test
+    public void unchangedLocalIsLeftAlone() {
+        Invitations server = new Invitations(
+                Collections.singletonList(invite(1, "a")),
+                Collections.singletonList(invite(2, "b")),
+                Collections.<InviteResponse>emptyList());
+        Account[] local = {account(1, "a", true, false), account(2, "B", false, true)};
+        FriendSync changes = FriendSync.Reconcile(server, local);
+
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void matchesOriginalLoops() {
+        Random rnd = new Random(20211017);
+        for (int round = 0; round < 200; round++) {
+            List<InviteResponse> friends = new ArrayList<>();
+            List<InviteResponse> rsvps = new ArrayList<>();
+            List<InviteResponse> invites = new ArrayList<>();
+            List<Account> local = new ArrayList<>();
+            List<Account> copy = new ArrayList<>();
+
+            // Each account id shows up in at most one server list, as the server guarantees.
+            int size = 1 + rnd.nextInt(60);
+            for (long id = 1; id <= size; id++) {
+                InviteResponse remote = invite(id, "user" + id);
+                remote.setScycle(rnd.nextInt(4));
+                int where = rnd.nextInt(4);
+                if (where == 0) friends.add(remote);
+                if (where == 1) rsvps.add(remote);
+                if (where == 2) invites.add(remote);
+
+                if (rnd.nextInt(3) > 0) {
+                    String name = rnd.nextInt(5) == 0 ? "other" + id : "USER" + id;
+                    boolean confirmed = rnd.nextBoolean();
+                    Account acct = account(id, name, confirmed, !confirmed);
+                    acct.sleepcycle = rnd.nextInt(4);
+                    local.add(acct);
+                    Account twin = account(id, name, confirmed, !confirmed);
+                    twin.sleepcycle = acct.sleepcycle;
+                    copy.add(twin);
+                }
+            }
+            Collections.shuffle(local, new Random(round));
+            Collections.shuffle(copy, new Random(round));
+            Invitations server = new Invitations(new ArrayList<>(friends), new ArrayList<>(rsvps), new ArrayList<>(invites));
+
+            FriendSync actual = FriendSync.Reconcile(server, local.toArray(new Account[0]));
+            FriendSync expected = legacy(server, copy.toArray(new Account[0]));
+
+            assertEquals(expected.toDel, actual.toDel);
+            assertEquals(describe(expected.toChg), describe(actual.toChg));
+            assertEquals(describe(expected.toAdd), describe(actual.toAdd));
+        }
+    }
+
+    /*
+     *  The comparison as it used to be done in Refresh (CheckForDeletes,
+     *  CheckForUpdates and CheckForAdditions), kept here as the reference.
+     */
+    private static FriendSync legacy(Invitations server, Account[] local) {
+        FriendSync result = new FriendSync();
+        List<List<InviteResponse>> lists = Arrays.asList(server.getFriends(), server.getRsvps(), server.getInvites());
+
+        localLoop: for (Account acct : local) {
+            for (List<InviteResponse> list : lists) {
+                for (InviteResponse invite : list) {
+                    if (acct.acctId == invite.getFriendId()) continue localLoop;
+                }
+            }
+            result.toDel.add(acct.localId);
+        }
+
+        localLoop: for (Account acct : local) {
+            for (int kind = 0; kind < 3; kind++) {
+                for (InviteResponse invite : lists.get(kind)) {
+                    if (acct.acctId == invite.getFriendId()) {
+                        if (invite.getFname().equalsIgnoreCase(acct.unique) &&
+                            invite.getTimezone().equalsIgnoreCase(acct.timezone) &&
+                            invite.getScycle() == acct.sleepcycle &&
+                            invite.getFdisplay().equalsIgnoreCase(acct.display) &&
+                            invite.getMirror() == acct.mirror && acct.confirmed == (kind == 0)) {
+                            continue localLoop;
+                        }
+                        acct.unique = invite.getFname();
+                        acct.timezone = invite.getTimezone();
+                        acct.sleepcycle = invite.getScycle();
+                        acct.display = invite.getFdisplay();
+                        acct.mirror = invite.getMirror();
+                        acct.confirmed = kind == 0;
+                        acct.pending = kind == 1;
+                        acct.isFriend = true;
+                        result.toChg.add(acct);
+                    }
+                }
+            }
+        }
+
+        for (int kind = 0; kind < 3; kind++) {
+            localLoop: for (InviteResponse invite : lists.get(kind)) {
+                for (Account acct : local) {
+                    if (invite.getFriendId() == acct.acctId) continue localLoop;
+                }
+                Account hold = new Account();
+                hold.acctId = invite.getFriendId();
+                hold.timezone = invite.getTimezone();
+                hold.sleepcycle = invite.getScycle();
+                hold.unique = invite.getFname();
+                hold.display = invite.getFdisplay();
+                hold.mirror = invite.getMirror();
+                hold.pending = kind == 1;
+                hold.confirmed = kind == 0;
+                hold.isFriend = true;
+                result.toAdd.add(hold);
+            }
+        }
+        return result;
+    }
+
+    private static InviteResponse invite(long id, String name) {
+        return new InviteResponse(name, id, name, 2, "America/Denver", false, true);
+    }
+
+    private static Account account(long id, String name, boolean confirmed, boolean pending) {
+        Account acct = new Account();
+        acct.localId = Long.toString(id * 10);
+        acct.acctId = id;
+        acct.unique = name;
+        acct.display = name;
+        acct.timezone = "America/Denver";
+        acct.confirmed = confirmed;
+        acct.pending = pending;
+        acct.isFriend = true;
+        return acct;
+    }
+
+    private static List<String> describe(List<Account> accts) {
+        List<String> rows = new ArrayList<>();
+        for (Account acct : accts) {
+            rows.add(acct.localId + "|" + acct.acctId + "|" + acct.unique + "|" + acct.display + "|" +
+                     acct.timezone + "|" + acct.sleepcycle + "|" + acct.mirror + "|" +
+                     acct.confirmed + "|" + acct.pending + "|" + acct.isFriend);
+        }
+        return rows;
+    }
+}
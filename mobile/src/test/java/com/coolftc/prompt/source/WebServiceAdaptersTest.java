@@ -0,0 +1,173 @@
+package com.coolftc.prompt.source;
+
+import com.coolftc.prompt.utility.ApiClient;
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ *  Checks the hand written adapters (see WebServiceAdapters) read and write each
+    model in WebServiceModels.kt the same way a plain reflective Gson does.  That
+    includes unknown fields, null and missing strings, missing numbers and booleans,
+    values sent as strings, and the nested lists of invites.
+    The test values are picked so that a field read into the wrong place shows up.
+    The last test times a cold parse (a new Gson each time, as every call used to do)
+    against the shared one, and prints the result.  It does not assert on the times,
+    as they depend on the machine.
+ */
+public class WebServiceAdaptersTest {
+    private static final String UNKNOWN = "\"zzz\":{\"a\":[1,{\"b\":null}],\"c\":\"d\"},\"yyy\":null,\"xxx\":[true,2.5],";
+
+    private final Gson mShared = ApiClient.getParser();
+    private final Gson mReflective = new Gson();
+
+    @Test
+    public void baseCamp() {
+        roundTrip(BaseCamp.class, new BaseCamp("api.host", "/v1", "x=1", "key"));
+        roundTrip(BaseCamp.class, new BaseCamp(null, "/v1", null, null));
+        parse(BaseCamp.class, "{" + UNKNOWN + "\"Host\":\"h\",\"Path\":null}");
+    }
+
+    @Test
+    public void pingResponse() {
+        roundTrip(PingResponse.class, new PingResponse("1.2.3"));
+        roundTrip(PingResponse.class, new PingResponse(null));
+        parse(PingResponse.class, "{" + UNKNOWN + "\"version\":42}");
+    }
+
+    @Test
+    public void registerRequest() {
+        roundTrip(RegisterRequest.class, new RegisterRequest("5551234567", true, "America/Denver", "Ann", 3, "ann@x", "dev::1", "tok", 1));
+        roundTrip(RegisterRequest.class, new RegisterRequest(null, false, null, null, 0, null, null, null, 0));
+        parse(RegisterRequest.class, "{" + UNKNOWN + "\"verify\":\"true\",\"scycle\":\"2\",\"type\":null,\"dname\":null}");
+    }
+
+    @Test
+    public void registerResponse() {
+        roundTrip(RegisterResponse.class, new RegisterResponse(9007199254740993L, "ticket"));
+        parse(RegisterResponse.class, "{" + UNKNOWN + "\"id\":\"17\"}");
+    }
+
+    @Test
+    public void userRequest() {
+        roundTrip(UserRequest.class, new UserRequest("UTC", "Bob", 1, "token", 2));
+        parse(UserRequest.class, "{" + UNKNOWN + "\"scycle\":null,\"target\":null}");
+    }
+
+    @Test
+    public void userResponse() {
+        roundTrip(UserResponse.class, new UserResponse("Bob", 2, "UTC", "bob@x", "5551234567", true, false, true, "2021-10-17T12:00:00Z"));
+        roundTrip(UserResponse.class, new UserResponse(null, 0, null, null, null, false, false, false, null));
+        roundTrip(UserResponse.class, new UserResponse("Cy", 1, "EST", "c", "d", false, true, false, "e"));
+        parse(UserResponse.class, "{" + UNKNOWN + "\"verified\":\"true\",\"ads\":null,\"broadcast\":true,\"created\":null}");
+    }
+
+    @Test
+    public void verifyRequestAndResponse() {
+        roundTrip(VerifyRequest.class, new VerifyRequest(123456, "sms", "5551234567"));
+        roundTrip(VerifyResponse.class, new VerifyResponse(true));
+        parse(VerifyRequest.class, "{" + UNKNOWN + "\"code\":\"99\",\"provider\":null}");
+        parse(VerifyResponse.class, "{" + UNKNOWN + "\"verified\":null}");
+    }
+
+    @Test
+    public void inviteRequestAndResponse() {
+        roundTrip(InviteRequest.class, new InviteRequest("a@b.c", "Al", "hi", true));
+        roundTrip(InviteResponse.class, invite(7, "a@b.c", true));
+        parse(InviteRequest.class, "{" + UNKNOWN + "\"mirror\":null,\"message\":null}");
+        parse(InviteResponse.class, "{" + UNKNOWN + "\"friendId\":12,\"complete\":\"false\"}");
+    }
+
+    @Test
+    public void invitations() {
+        List<InviteResponse> friends = new ArrayList<>();
+        for (int i = 0; i < 20; i++) friends.add(invite(i, "f" + i, i % 2 == 0));
+        roundTrip(Invitations.class, new Invitations(friends, Arrays.asList(invite(100, "r", false), null), new ArrayList<InviteResponse>()));
+        roundTrip(Invitations.class, new Invitations(null, null, null));
+        parse(Invitations.class, "{" + UNKNOWN + "\"friends\":[{" + UNKNOWN + "\"fname\":\"x\"},null,{}],\"rsvps\":null,\"invites\":[]}");
+
+        Invitations empty = mShared.fromJson("{}", Invitations.class);
+        assertNull(empty.getFriends());
+        assertEquals(empty, mReflective.fromJson("{}", Invitations.class));
+    }
+
+    @Test
+    public void promptRequestAndResponse() {
+        roundTrip(PromptRequest.class, new PromptRequest("2021-10-17T08:00:00Z", "UTC", 2, 1, 3, 44, 6, 7, "2022-01-01", 5, 81, "Call mom"));
+        roundTrip(PromptRequest.class, new PromptRequest(null, null, 0, 0, 0, 0, 0, 0, null, 0, 0, null));
+        roundTrip(PromptResponse.class, new PromptResponse(555, "2021-10-17T08:00:00Z"));
+        parse(PromptRequest.class, "{" + UNKNOWN + "\"when\":null,\"groupId\":\"3\",\"recurs\":null}");
+        parse(PromptResponse.class, "{" + UNKNOWN + "\"promptTime\":null}");
+    }
+
+    @Test
+    public void snoozeRequest() {
+        roundTrip(SnoozeRequest.class, new SnoozeRequest("2021-10-17T08:00:00Z", "UTC", 9, 10, "later"));
+        parse(SnoozeRequest.class, "{" + UNKNOWN + "\"snoozeId\":null}");
+    }
+
+    @Test
+    public void nullAndEmpty() {
+        assertNull(mShared.fromJson("null", PromptResponse.class));
+        assertEquals("null", mShared.toJson(null, PromptResponse.class));
+        parse(PromptResponse.class, "{}");
+    }
+
+    @Test
+    public void coldAndWarmParse() {
+        List<InviteResponse> friends = new ArrayList<>();
+        for (int i = 0; i < 200; i++) friends.add(invite(i, "friend" + i, i % 3 == 0));
+        String json = mReflective.toJson(new Invitations(friends, friends, friends));
+        final int rounds = 200;
+
+        // Each side gets a few unmeasured rounds, so the JIT is not what gets measured.
+        for (int i = 0; i < 20; i++) {
+            new Gson().fromJson(json, Invitations.class);
+            mShared.fromJson(json, Invitations.class);
+        }
+
+        long start = System.nanoTime();
+        Invitations cold = null;
+        for (int i = 0; i < rounds; i++) cold = new Gson().fromJson(json, Invitations.class);
+        long coldNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        Invitations warm = null;
+        for (int i = 0; i < rounds; i++) warm = mShared.fromJson(json, Invitations.class);
+        long warmNs = System.nanoTime() - start;
+
+        assertEquals(cold, warm);
+        System.out.println(String.format("Invitations (%d bytes): new Gson per parse %.1f us, shared adapters %.1f us",
+                json.length(), coldNs / 1000.0 / rounds, warmNs / 1000.0 / rounds));
+    }
+
+    /*
+     *  Both parsers must write the same JSON, and read it back into the same value.
+     */
+    private <T> void roundTrip(Class<T> type, T value) {
+        assertNotEquals(mReflective.getAdapter(type).getClass(), mShared.getAdapter(type).getClass());
+        String shared = mShared.toJson(value, type);
+        String reflective = mReflective.toJson(value, type);
+        assertEquals(JsonParser.parseString(reflective), JsonParser.parseString(shared));
+        assertEquals(value, mShared.fromJson(shared, type));
+        assertEquals(value, mReflective.fromJson(shared, type));
+    }
+
+    // Both parsers must read the same value from the JSON.
+    private <T> void parse(Class<T> type, String json) {
+        assertEquals(mReflective.fromJson(json, type), mShared.fromJson(json, type));
+    }
+
+    private static InviteResponse invite(long id, String name, boolean flag) {
+        return new InviteResponse(name, id, name.toUpperCase(), (int) (id % 4), "UTC", flag, !flag);
+    }
+}
@@ -0,0 +1,183 @@
+package com.coolftc.prompt.utility;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *  Checks the WebServices calls (through the HttpTransport) leave the socket in the
+    pool, so a run of calls to the same server costs one connection (one handshake).
+    A local server counts the connections by the client port each request comes from.
+    Covered are GETs and POSTs, zipped responses, responses with a trailing body the
+    caller does not use, and error responses.  A response with more left over than is
+    worth draining must not be reused, so that costs a second connection.
+    The JVM HttpURLConnection only pools a socket once its response has been read to
+    the end, so these fail if any response is not drained.  Unlike the Android one,
+    its disconnect() leaves a pooled socket alone, so release() is checked directly.
+ */
+public class HttpTransportTest {
+    private static final String TRAILER = "\n\n   \n";
+
+    private HttpServer mServer;
+    private String mBase;
+    private final Set<Integer> mClientPorts = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger mRequests = new AtomicInteger();
+
+    // What the test server sends back, and what the calls send it.
+    static class Echo {
+        String name;
+        int count;
+
+        Echo(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.setExecutor(Executors.newSingleThreadExecutor());
+        mServer.createContext("/echo", exchange -> reply(exchange, 200, readAll(exchange.getRequestBody()) + TRAILER, false));
+        mServer.createContext("/thing", exchange -> reply(exchange, 200, "{\"name\":\"thing\",\"count\":7}" + TRAILER, false));
+        mServer.createContext("/zipped", exchange -> reply(exchange, 200, "{\"name\":\"zipped\",\"count\":3}" + TRAILER, true));
+        mServer.createContext("/missing", exchange -> reply(exchange, 404, "{\"message\":\"no such thing\"}", false));
+        mServer.createContext("/huge", exchange -> {
+            char[] padding = new char[2 * 1024 * 1024];
+            Arrays.fill(padding, ' ');
+            reply(exchange, 200, "{\"name\":\"huge\",\"count\":1}" + new String(padding), false);
+        });
+        mServer.start();
+        mBase = "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void callsShareOneConnection() throws ExpClass {
+        WebServices ws = new WebServices(new Gson());
+
+        Echo got = ws.callGetApi(mBase + "/thing", Echo.class, "");
+        assertEquals("thing", got.name);
+        assertEquals(7, got.count);
+
+        got = ws.callPostApi(mBase + "/echo", new Echo("posted", 2), Echo.class, "");
+        assertEquals("posted", got.name);
+        assertEquals(2, got.count);
+
+        // The response body is not wanted, so it is drained.
+        ws.callPostApi(mBase + "/echo", new Echo("ignored", 1), "");
+        ws.callPutApi(mBase + "/echo", new Echo("ignored", 1), "");
+
+        got = ws.callGetApi(mBase + "/zipped", Echo.class, "");
+        assertEquals("zipped", got.name);
+
+        try {
+            ws.callGetApi(mBase + "/missing", Echo.class, "");
+            fail("A 404 should throw");
+        } catch (ExpClass kx) {
+            assertEquals(ExpClass.HTTP_STATUS, kx.getNumber());
+            assertEquals(404, kx.getStatus());
+        }
+
+        got = ws.callGetApi(mBase + "/thing", Echo.class, "");
+        assertEquals("thing", got.name);
+
+        assertEquals(7, mRequests.get());
+        assertEquals(1, mClientPorts.size());
+    }
+
+    @Test
+    public void largeLeftoverIsNotReused() throws ExpClass {
+        WebServices ws = new WebServices(new Gson());
+
+        assertEquals("thing", ws.callGetApi(mBase + "/thing", Echo.class, "").name);
+        // Only the first value is parsed, the megabytes after it are not worth draining.
+        assertEquals("huge", ws.callGetApi(mBase + "/huge", Echo.class, "").name);
+        assertEquals("thing", ws.callGetApi(mBase + "/thing", Echo.class, "").name);
+
+        assertEquals(3, mRequests.get());
+        assertEquals(2, mClientPorts.size());
+    }
+
+    @Test
+    public void releaseOnlyDropsUnreadConnections() throws IOException {
+        final AtomicInteger disconnects = new AtomicInteger();
+        HttpURLConnection webC = new HttpURLConnection(new URL(mBase + "/thing")) {
+            @Override public void disconnect() { disconnects.incrementAndGet(); }
+            @Override public boolean usingProxy() { return false; }
+            @Override public void connect() { }
+        };
+
+        HttpTransport.INSTANCE.release(webC, true);
+        assertEquals(0, disconnects.get());
+        HttpTransport.INSTANCE.release(webC, false);
+        assertEquals(1, disconnects.get());
+    }
+
+    @Test
+    public void drainReportsLeftover() throws IOException {
+        byte[] small = new byte[100];
+        byte[] large = new byte[1024 * 1024];
+        assertTrue(HttpTransport.INSTANCE.drain(new ByteArrayInputStream(small)));
+        assertFalse(HttpTransport.INSTANCE.drain(new ByteArrayInputStream(large)));
+    }
+
+    private void reply(HttpExchange exchange, int status, String body, boolean zip) throws IOException {
+        mRequests.incrementAndGet();
+        mClientPorts.add(exchange.getRemoteAddress().getPort());
+        readAll(exchange.getRequestBody());
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (zip) {
+            ByteArrayOutputStream zipped = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(zipped)) { gzip.write(bytes); }
+            bytes = zipped.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        } catch (IOException ex) {
+            // The client is allowed to hang up on the large responses.
+        }
+        exchange.close();
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) all.write(buffer, 0, read);
+        return all.toString("UTF-8");
+    }
+}
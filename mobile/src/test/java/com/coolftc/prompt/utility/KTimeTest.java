@@ -0,0 +1,118 @@
+package com.coolftc.prompt.utility;
+
+import org.junit.Test;
+
+import java.time.OffsetDateTime;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ *  Checks the fast RFC 3339 parse gives the same epoch as the general
+    ParseToCalendar (for the times it can read) and as java.time (for the
+    times it cannot, like short fractions).  One test times the two parses
+    and prints the result, without asserting on the times, as they depend
+    on the machine.
+ */
+public class KTimeTest {
+
+    @Test
+    public void matchesParseToCalendar() throws ExpParseToCalendar {
+        Random rnd = new Random(3339);
+        for (int i = 0; i < 20000; i++) {
+            String time = randomTime(rnd, 3, rnd.nextInt(3));
+            long expected = KTime.ParseToCalendar(time, KTime.KT_fmtDate3339fk, KTime.UTC_TIMEZONE).getTimeInMillis();
+            assertEquals(time, expected, KTime.Parse3339(time));
+        }
+    }
+
+    @Test
+    public void matchesJavaTime() {
+        Random rnd = new Random(8601);
+        for (int i = 0; i < 20000; i++) {
+            String time = randomTime(rnd, rnd.nextInt(10), rnd.nextInt(3));
+            long expected = OffsetDateTime.parse(time).toInstant().toEpochMilli();
+            assertEquals(time, expected, KTime.Parse3339(time));
+        }
+    }
+
+    @Test
+    public void readsOtherOffsets() {
+        long utc = KTime.Parse3339("2021-10-17T20:05:00.000Z");
+        assertEquals(utc, KTime.Parse3339("2021-10-17T20:05:00.000UTC"));
+        assertEquals(utc, KTime.Parse3339("2021-10-17T20:05:00.000 GMT"));
+        assertEquals(utc, KTime.Parse3339("2021-10-17T14:05:00.000GMT-06:00"));
+        assertEquals(utc, KTime.Parse3339("2021-10-17T14:05:00.000-0600"));
+        assertEquals(utc, KTime.Parse3339("2021-10-17T14:05:00.000-06"));
+        assertEquals(utc, KTime.Parse3339("2021-10-17T20:05:00Z"));
+        assertEquals(-6 * 60 * 60 * 1000L, KTime.Parse3339Offset("2021-10-17T14:05:00.1-06:00"));
+        assertEquals(0, KTime.Parse3339Offset("2021-10-17T20:05:00.000Z"));
+    }
+
+    @Test
+    public void rejectsBadTimes() {
+        String[] bad = {null, "", "Processing", "2021-10-17", "2021-10-17T20:05:00.000", "2021-13-17T20:05:00.000Z",
+                        "2021-10-17T20:05:00.000MDT", "2021-10-17T20:5:00.000Z", "2021/10/17T20:05:00.000Z",
+                        "2021-10-17T20:05:00.000+6", "2021-10-17T20:05:00.000+06:0"};
+        for (String time : bad) {
+            assertEquals(time, KTime.KT_INVALID, KTime.Parse3339(time));
+        }
+    }
+
+    @Test
+    public void timedAgainstParseToCalendar() throws ExpParseToCalendar {
+        Random rnd = new Random(1970);
+        String[] times = new String[5000];
+        for (int i = 0; i < times.length; i++) times[i] = randomTime(rnd, 3, rnd.nextInt(3));
+        final int rounds = 10;
+
+        // Each side gets a few unmeasured rounds, so the JIT is not what gets measured.
+        for (int r = 0; r < 5; r++) {
+            for (String time : times) {
+                KTime.ParseToCalendar(time, KTime.KT_fmtDate3339fk, KTime.UTC_TIMEZONE);
+                KTime.Parse3339(time);
+            }
+        }
+
+        long[] slow = new long[times.length];
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < times.length; i++) {
+                slow[i] = KTime.ParseToCalendar(times[i], KTime.KT_fmtDate3339fk, KTime.UTC_TIMEZONE).getTimeInMillis();
+            }
+        }
+        long slowNs = System.nanoTime() - start;
+
+        long[] fast = new long[times.length];
+        start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < times.length; i++) fast[i] = KTime.Parse3339(times[i]);
+        }
+        long fastNs = System.nanoTime() - start;
+
+        assertArrayEquals(slow, fast);
+        System.out.println(String.format("%d times: ParseToCalendar %.2f us, Parse3339 %.2f us (per parse)",
+                times.length, slowNs / 1000.0 / rounds / times.length, fastNs / 1000.0 / rounds / times.length));
+    }
+
+    /*
+     *  A time from 1970 to 2099 with "digits" of fractional seconds and an
+     *  offset that is Z (zone 0), +hh:mm (zone 1) or -hh:mm (zone 2).
+     */
+    private static String randomTime(Random rnd, int digits, int zone) {
+        StringBuilder time = new StringBuilder();
+        time.append(String.format("%04d-%02d-%02dT%02d:%02d:%02d", 1970 + rnd.nextInt(130), 1 + rnd.nextInt(12),
+                1 + rnd.nextInt(28), rnd.nextInt(24), rnd.nextInt(60), rnd.nextInt(60)));
+        if (digits > 0) {
+            time.append('.');
+            for (int i = 0; i < digits; i++) time.append(rnd.nextInt(10));
+        }
+        if (zone == 0) {
+            time.append('Z');
+        } else {
+            time.append(String.format("%s%02d:%02d", zone == 1 ? "+" : "-", rnd.nextInt(15), rnd.nextInt(4) * 15));
+        }
+        return time.toString();
+    }
+}
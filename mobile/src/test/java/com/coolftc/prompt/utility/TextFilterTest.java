@@ -0,0 +1,206 @@
+package com.coolftc.prompt.utility;
+
+import com.coolftc.prompt.Account;
+import com.coolftc.prompt.Reminder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ *  Checks the type ahead filter returns the same rows, in the same order, as a
+    full case insensitive scan of each field, both when narrowing and when the
+    search is backed up or replaced.  The list sizes are those of a heavy user.
+    The last test times typing against both lists with the filter and with the
+    full scan, and prints the result.  It does not assert on the times, as they
+    depend on the machine.
+ */
+public class TextFilterTest {
+    private static final String[] WORDS = {"Ann", "bob", "CARL", "dina", "\u00c9mile", "frank", "Gus", "stra\u00dfe",
+                                           "dinner", "call", "mom", "pick up", "meds", "555-0100", "@mail.com"};
+
+    @Test
+    public void emptyTermReturnsEverything() {
+        List<Account> accounts = contacts(new Random(1), 20);
+        TextFilter<Account> filter = new TextFilter<>(accounts, Account::SearchKey);
+
+        assertEquals(accounts, filter.Filter(""));
+        filter.Filter("an");
+        assertEquals(accounts, filter.Filter(null));
+    }
+
+    @Test
+    public void fieldsDoNotRunTogether() {
+        Account acct = new Account();
+        acct.unique = "ann";
+        acct.display = "bob";
+        TextFilter<Account> filter = new TextFilter<>(Arrays.asList(acct), Account::SearchKey);
+
+        assertEquals(0, filter.Filter("nnb").size());
+        assertSame(acct, filter.Filter("BO").get(0));
+    }
+
+    @Test
+    public void contactsMatchFullScan() {
+        Random rnd = new Random(5000);
+        List<Account> accounts = contacts(rnd, 5000);
+        TextFilter<Account> filter = new TextFilter<>(accounts, Account::SearchKey);
+
+        for (int round = 0; round < 50; round++) {
+            for (String term : typing(rnd)) {
+                assertEquals(term, scanContacts(accounts, term), filter.Filter(term));
+            }
+        }
+    }
+
+    @Test
+    public void remindersMatchFullScan() {
+        Random rnd = new Random(10000);
+        List<Reminder> reminders = reminders(rnd, 10000);
+        TextFilter<Reminder> filter = new TextFilter<>(reminders, Reminder::SearchKey);
+
+        for (int round = 0; round < 50; round++) {
+            for (String term : typing(rnd)) {
+                assertEquals(term, scanReminders(reminders, term), filter.Filter(term));
+            }
+        }
+    }
+
+    @Test
+    public void timedAgainstFullScan() {
+        Random rnd = new Random(15000);
+        List<Reminder> reminders = reminders(rnd, 10000);
+        List<Account> accounts = contacts(rnd, 5000);
+        List<List<String>> searches = new ArrayList<>();
+        for (int i = 0; i < 40; i++) searches.add(typing(rnd));
+
+        // Each side gets a few unmeasured rounds, so the JIT is not what gets measured.
+        for (int i = 0; i < 3; i++) {
+            typeScan(reminders, accounts, searches);
+            typeFilter(reminders, accounts, searches);
+        }
+
+        long start = System.nanoTime();
+        List<List<?>> scanned = typeScan(reminders, accounts, searches);
+        long scanNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        List<List<?>> filtered = typeFilter(reminders, accounts, searches);
+        long filterNs = System.nanoTime() - start;
+
+        assertEquals(scanned, filtered);
+        int keys = searches.size() * searches.get(0).size();
+        System.out.println(String.format("%d reminders, %d contacts, %d keystrokes: full scan %.1f us, filter %.1f us (per keystroke, both lists)",
+                reminders.size(), accounts.size(), keys, scanNs / 1000.0 / keys, filterNs / 1000.0 / keys));
+    }
+
+    // The results of typing each search, with the original toLowerCase() scan.
+    private static List<List<?>> typeScan(List<Reminder> reminders, List<Account> accounts, List<List<String>> searches) {
+        List<List<?>> results = new ArrayList<>();
+        for (List<String> search : searches) {
+            for (String term : search) {
+                results.add(scanReminders(reminders, term));
+                results.add(scanContacts(accounts, term));
+            }
+        }
+        return results;
+    }
+
+    // The same, with a filter for each list, built when the list is loaded.
+    private static List<List<?>> typeFilter(List<Reminder> reminders, List<Account> accounts, List<List<String>> searches) {
+        TextFilter<Reminder> byMessage = new TextFilter<>(reminders, Reminder::SearchKey);
+        TextFilter<Account> byContact = new TextFilter<>(accounts, Account::SearchKey);
+        List<List<?>> results = new ArrayList<>();
+        for (List<String> search : searches) {
+            for (String term : search) {
+                results.add(byMessage.Filter(term));
+                results.add(byContact.Filter(term));
+            }
+        }
+        return results;
+    }
+
+    private static List<Account> scanContacts(List<Account> accounts, String term) {
+        List<Account> found = new ArrayList<>();
+        String lowTerm = term.toLowerCase();
+        for (Account acct : accounts) {
+            if (acct.unique.toLowerCase().contains(lowTerm) || acct.display.toLowerCase().contains(lowTerm) ||
+                acct.contactName.toLowerCase().contains(lowTerm)) found.add(acct);
+        }
+        return found;
+    }
+
+    private static List<Reminder> scanReminders(List<Reminder> reminders, String term) {
+        List<Reminder> found = new ArrayList<>();
+        String lowTerm = term.toLowerCase();
+        for (Reminder msg : reminders) {
+            if (msg.target.display.toLowerCase().contains(lowTerm) ||
+                msg.message.toLowerCase().contains(lowTerm)) found.add(msg);
+        }
+        return found;
+    }
+
+    private static List<Reminder> reminders(Random rnd, int size) {
+        List<Reminder> reminders = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Reminder msg = new Reminder();
+            msg.target = new Account();
+            msg.target.display = phrase(rnd, 2);
+            msg.message = phrase(rnd, 6);
+            reminders.add(msg);
+        }
+        return reminders;
+    }
+
+    private static List<Account> contacts(Random rnd, int size) {
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Account acct = new Account();
+            acct.unique = rnd.nextBoolean() ? "+1 555 01" + i : phrase(rnd, 1) + i + "@mail.com";
+            acct.display = phrase(rnd, 2);
+            acct.contactName = rnd.nextBoolean() ? phrase(rnd, 2) : "";
+            accounts.add(acct);
+        }
+        return accounts;
+    }
+
+    private static String phrase(Random rnd, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) text.append(' ');
+            text.append(WORDS[rnd.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    /*
+     *  A search as it is typed: a few characters added, sometimes one taken
+     *  away, and now and then the whole thing replaced.
+     */
+    private static List<String> typing(Random rnd) {
+        List<String> terms = new ArrayList<>();
+        String target = phrase(rnd, 2);
+        String term = "";
+        for (int step = 0; step < 12; step++) {
+            int pick = rnd.nextInt(10);
+            if (pick == 0 && term.length() > 0) {
+                term = term.substring(0, term.length() - 1);
+            } else if (pick == 1) {
+                target = phrase(rnd, 2);
+                term = target.substring(0, 1 + rnd.nextInt(2));
+            } else if (term.length() < target.length() && target.startsWith(term)) {
+                term = target.substring(0, term.length() + 1);
+            } else {
+                term = term + (char) ('a' + rnd.nextInt(26));
+            }
+            terms.add(term);
+        }
+        return terms;
+    }
+}